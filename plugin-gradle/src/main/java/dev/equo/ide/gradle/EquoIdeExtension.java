@@ -28,6 +28,7 @@ import org.gradle.api.Project;
 /** The DSL inside the equoIde block. */
 public class EquoIdeExtension extends P2ModelDslWithCatalog {
 	public boolean useAtomos = false;
+	public boolean useAppCds = false;
 	private final IdeHook.List ideHooks = new IdeHook.List();
 	public final IdeHookBranding branding = new IdeHookBranding();
 
@@ -105,7 +105,7 @@ public class EquoIdeGradlePlugin implements Plugin<Project> {
 						var workspace = new WorkspaceInit();
 						var model = extension.prepareModel(workspace);
 						var query =
-								model.query(P2ModelDsl.clientCaching(project), P2ModelDsl.queryCaching(project));
+								P2ModelDsl.query(project, model, extension.lockFile);
 						workspace.copyAllFrom(extension.workspace);
 						boolean useAtomosOverrideTrue =
 								anyArgMatching(
@@ -136,6 +136,7 @@ public class EquoIdeGradlePlugin implements Plugin<Project> {
 									task.getProjectDir().set(project.getProjectDir());
 									// extension.useAtomos is on purpose, override is parsed inside the task
 									task.getUseAtomos().set(extension.useAtomos);
+									task.getUseAppCds().set(extension.useAppCds);
 									task.ideHooks = extension.getIdeHooks();
 									task.workspace = workspace;
 								});
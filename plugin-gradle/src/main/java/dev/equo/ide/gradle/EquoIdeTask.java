@@ -43,6 +43,9 @@ public abstract class EquoIdeTask extends DefaultTask {
 	@Internal
 	public abstract Property<Boolean> getUseAtomos();
 
+	@Internal
+	public abstract Property<Boolean> getUseAppCds();
+
 	@Internal
 	public abstract Property<Boolean> getEquoIdeWasCalledDirectly();
 
@@ -104,6 +107,29 @@ public abstract class EquoIdeTask extends DefaultTask {
 		this.useAtomosOverride = Boolean.parseBoolean(useAtomos);
 	}
 
+	private Boolean useAppCdsOverride = null;
+
+	@Option(
+			option = "use-app-cds",
+			description =
+					"Determines whether to record and reuse an AppCDS archive of the IDE's classes "
+							+ "(Java 13+)")
+	void useAppCds(String useAppCds) {
+		this.useAppCdsOverride = Boolean.parseBoolean(useAppCds);
+	}
+
+	/**
+	 * Gradle fails the build for a task option which isn't declared, so {@code --update-lock} has to
+	 * be declared here. But the lock file is read in {@code afterEvaluate}, since the locked maven
+	 * coordinates become dependencies of the {@code equoIde} configuration, which is before any task
+	 * option is set. So the flag takes effect through {@link P2ModelDsl#updateLock}, which reads it
+	 * from the command line, and there is nothing left for the task to do with it.
+	 */
+	@Option(
+			option = "update-lock",
+			description = "Resolves again and rewrites the lock file, if there is one.")
+	void updateLock(boolean updateLock) {}
+
 	private boolean debugIde = false;
 
 	@Option(option = "debug-ide", description = "The IDE will suspend until you attach a debugger.")
@@ -152,6 +178,7 @@ public abstract class EquoIdeTask extends DefaultTask {
 		caller.showConsole = showConsole;
 		caller.useAtomos = useAtomosOverride != null ? useAtomosOverride : getUseAtomos().get();
 		caller.debugIde = debugIde;
+		caller.useAppCds = useAppCdsOverride != null ? useAppCdsOverride : getUseAppCds().get();
 		caller.showConsoleFlag = "--show-console";
 		caller.cleanFlag = "--clean";
 		caller.launch();
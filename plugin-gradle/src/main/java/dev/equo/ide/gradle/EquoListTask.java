@@ -93,6 +93,15 @@ public abstract class EquoListTask extends DefaultTask {
 		tool.raw = raw;
 	}
 
+	@Option(
+			option = "search",
+			description =
+					"Lists the units whose id starts with the given text, or whose name and description "
+							+ "contain its words (use pkg:some.package to search provided packages)")
+	void setSearch(String search) {
+		tool.search = search;
+	}
+
 	@Option(
 			option = "request",
 			description = "Lists the full p2 request we are making (helpful for debugging catalog)")
@@ -104,8 +113,10 @@ public abstract class EquoListTask extends DefaultTask {
 	public void list() throws Exception {
 		if (!tool.argsAreValid()) {
 			throw new GradleException(
-					"Exactly one of --request, --installed, --problems, --optional, --all, --detail, or --raw must be set.\n"
-							+ "`gradlew help --task equoList` for more info or visit https://github.com/equodev/equo-ide/blob/main/P2_MULTITOOL.md");
+					"Exactly one of --request, --installed, --problems, --optional, --all, --detail, "
+							+ "--raw, or --search must be set.\n"
+							+ "`gradlew help --task equoList` for more info or visit "
+							+ "https://github.com/equodev/equo-ide/blob/main/P2_MULTITOOL.md");
 		}
 		var workspaceUnused = new WorkspaceInit();
 		var model = getExtension().get().prepareModel(workspaceUnused);
@@ -64,6 +64,9 @@ public class P2DepsExtension {
 		dsl.model.applyNativeFilterIfNoPlatformFilter();
 		dsl.model.validateFilters();
 		for (var config : configurations) {
+			if (dsl.lockFile != null) {
+				lockFiles.put(config.getName(), dsl.lockFile);
+			}
 			var existing = this.configurations.put(config.getName(), dsl.model);
 			if (existing != null) {
 				throw new IllegalArgumentException(
@@ -78,10 +81,9 @@ public class P2DepsExtension {
 	}
 
 	private final Map<String, P2Model> configurations = new HashMap<>();
+	private final Map<String, File> lockFiles = new HashMap<>();
 
 	void configure() {
-		var clientCaching = P2ModelDsl.clientCaching(project);
-		var queryCaching = P2ModelDsl.queryCaching(project);
 		for (Map.Entry<String, P2Model> entry : configurations.entrySet()) {
 			String config = entry.getKey();
 			P2Model model = entry.getValue();
@@ -90,7 +92,7 @@ public class P2DepsExtension {
 			// add the pure-maven deps
 			addPureMavenDeps(model, project, config);
 			// then the maven-resolved deps
-			var query = model.query(clientCaching, queryCaching);
+			var query = P2ModelDsl.query(project, model, lockFiles.get(config));
 			for (String mavenCoord : query.getJarsOnMavenCentral()) {
 				project
 						.getLogger()
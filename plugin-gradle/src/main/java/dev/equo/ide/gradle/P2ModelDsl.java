@@ -16,6 +16,8 @@ package dev.equo.ide.gradle;
 import dev.equo.solstice.p2.P2ClientCache;
 import dev.equo.solstice.p2.P2Model;
 import dev.equo.solstice.p2.P2QueryCache;
+import dev.equo.solstice.p2.P2QueryResult;
+import java.io.File;
 import org.gradle.api.Action;
 import org.gradle.api.Project;
 
@@ -77,6 +79,22 @@ public class P2ModelDsl {
 		return forceRecalculate ? P2QueryCache.FORCE_RECALCULATE : P2QueryCache.ALLOW;
 	}
 
+	/** Runs the query, pinned to the given lock file if it is non-null. */
+	static P2QueryResult query(Project project, P2Model model, File lockFile) {
+		var clientCaching = clientCaching(project);
+		if (lockFile == null) {
+			return model.query(clientCaching, queryCaching(project));
+		} else {
+			return model.queryLocked(clientCaching, lockFile, updateLock(project));
+		}
+	}
+
+	static boolean updateLock(Project project) {
+		return EquoIdeGradlePlugin.anyArgEquals(project, UPDATE_LOCK_FLAG)
+				|| project.getGradle().getStartParameter().isWriteDependencyLocks();
+	}
+
+	private static final String UPDATE_LOCK_FLAG = "--update-lock";
 	private static final String CLEAN_FLAG = "--clean";
 	private static final String REFRESH_DEPENDENCIES = "--refresh-dependencies";
 }
@@ -30,6 +30,17 @@ public class P2ModelDslWithCatalog extends P2ModelDsl {
 		this.project = project;
 	}
 
+	File lockFile;
+
+	/**
+	 * Pins the resolution to the given lock file, which should be checked in. Once it exists, only
+	 * the jars it lists are downloaded, with no p2 metadata and no resolution. Run with {@code
+	 * --update-lock} or {@code --write-locks} to resolve again and rewrite it.
+	 */
+	public void lockFile(Object path) {
+		lockFile = project.file(path);
+	}
+
 	public static class Platform extends GradleCatalogDsl {
 		public Platform(String urlOverride) {
 			super(Catalog.PLATFORM, urlOverride);
@@ -15,7 +15,11 @@ package dev.equo.ide.maven;
 
 import dev.equo.ide.IdeHook;
 import dev.equo.ide.WorkspaceInit;
+import dev.equo.solstice.p2.P2ClientCache;
 import dev.equo.solstice.p2.P2Model;
+import dev.equo.solstice.p2.P2QueryCache;
+import dev.equo.solstice.p2.P2QueryResult;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -52,6 +56,27 @@ public abstract class AbstractP2Mojo extends AbstractMojo {
 
 	@Parameter private List<String> installs = new ArrayList<>();
 
+	/**
+	 * Pins the resolution to this file, which should be checked in. Once it exists, only the jars it
+	 * lists are downloaded, with no p2 metadata and no resolution.
+	 */
+	@Parameter(property = "lockFile")
+	private File lockFile;
+
+	/** Resolves again and rewrites the {@code lockFile}. */
+	@Parameter(property = "updateLock", defaultValue = "false")
+	private boolean updateLock;
+
+	/** Runs the query, pinned to {@code lockFile} if there is one. */
+	protected P2QueryResult query(
+			P2Model model, P2ClientCache clientCaching, P2QueryCache queryCaching) {
+		if (lockFile == null) {
+			return model.query(clientCaching, queryCaching);
+		} else {
+			return model.queryLocked(clientCaching, lockFile, updateLock);
+		}
+	}
+
 	protected void modifyModel(P2Model model, IdeHook.List ideHooks, WorkspaceInit workspaceInit) {}
 
 	protected P2Model prepareModel(IdeHook.List ideHooks, WorkspaceInit workspaceInit)
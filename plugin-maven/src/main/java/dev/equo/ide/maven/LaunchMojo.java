@@ -80,6 +80,13 @@ public class LaunchMojo extends AbstractP2MojoWithCatalog {
 	@Parameter(property = "useAtomos", defaultValue = "false")
 	private boolean useAtomos;
 
+	/**
+	 * Records an AppCDS archive of the IDE's classes on the first launch and reuses it afterwards
+	 * (Java 13+).
+	 */
+	@Parameter(property = "useAppCds", defaultValue = "false")
+	private boolean useAppCds;
+
 	/** Blocks IDE startup to help you attach a debugger. */
 	@Parameter(property = "debugIde", defaultValue = "false")
 	private boolean debugIde;
@@ -131,7 +138,7 @@ public class LaunchMojo extends AbstractP2MojoWithCatalog {
 			var clientCaching = P2ClientCache.defaultIfOfflineIsAndForceRecalculateIs(isOffline, clean);
 			var model = super.prepareModel(ideHooks, workspaceInit);
 			var query =
-					model.query(clientCaching, clean ? P2QueryCache.FORCE_RECALCULATE : P2QueryCache.ALLOW);
+					query(model, clientCaching, clean ? P2QueryCache.FORCE_RECALCULATE : P2QueryCache.ALLOW);
 			for (var dep : NestedJars.transitiveDeps(useAtomos, NestedJars.CoordFormat.MAVEN, query)) {
 				deps.add(new Dependency(new DefaultArtifact(dep), null, null, EXCLUDE_ALL_TRANSITIVES));
 			}
@@ -173,6 +180,7 @@ public class LaunchMojo extends AbstractP2MojoWithCatalog {
 			caller.showConsole = showConsole;
 			caller.useAtomos = useAtomos;
 			caller.debugIde = debugIde;
+			caller.useAppCds = useAppCds;
 			caller.showConsoleFlag = "-DshowConsole";
 			caller.cleanFlag = "-Dclean";
 			caller.launch();
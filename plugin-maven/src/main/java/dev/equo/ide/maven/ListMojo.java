@@ -54,6 +54,13 @@ public class ListMojo extends AbstractP2MojoWithCatalog {
 	@Parameter(property = "raw", required = false)
 	private String raw;
 
+	/**
+	 * Lists the units whose id starts with the given text, or whose name and description contain its
+	 * words (use pkg:some.package to search provided packages).
+	 */
+	@Parameter(property = "search", required = false)
+	private String search;
+
 	/** Lists the full p2 request we are making (helpful for debugging catalog). */
 	@Parameter(property = "request", defaultValue = "false")
 	private boolean request;
@@ -72,11 +79,15 @@ public class ListMojo extends AbstractP2MojoWithCatalog {
 		tool.all = all;
 		tool.detail = detail;
 		tool.raw = raw;
+		tool.search = search;
 		tool.request = request;
 		if (!tool.argsAreValid()) {
 			throw new MojoExecutionException(
-					"Exactly one of -Drequest, -Dinstalled, -Dproblems, -Doptional, -Dall=[categories|features|jars], -Ddetail=id, or -Draw=id must be set.\n"
-							+ "`mvn help:describe -Dcmd=equo-ide:list -Ddetail` for more info or visit https://github.com/equodev/equo-ide/blob/main/P2_MULTITOOL.md");
+					"Exactly one of -Drequest, -Dinstalled, -Dproblems, -Doptional, "
+							+ "-Dall=[categories|features|jars], -Ddetail=id, -Draw=id, or -Dsearch=text "
+							+ "must be set.\n"
+							+ "`mvn help:describe -Dcmd=equo-ide:list -Ddetail` for more info or visit "
+							+ "https://github.com/equodev/equo-ide/blob/main/P2_MULTITOOL.md");
 		}
 		boolean isOffline = false;
 		var clientCaching = P2ClientCache.defaultIfOfflineIsAndForceRecalculateIs(isOffline, clean);
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.ide;
+
+import dev.equo.solstice.HashMisc;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * A dynamic AppCDS archive of the classes which an IDE loads, stored in the workspace directory and
+ * keyed by a hash of the JVM and the classpath. The first launch records the archive when the IDE
+ * exits, and later launches with the same JVM and classpath map it rather than loading and
+ * verifying every class again. A changed classpath gets a new key, and the stale archive is
+ * deleted. An {@code initOnly} launch never loads the workbench, so its archive is kept apart and
+ * only used by other {@code initOnly} launches, and the first full launch records the full one.
+ */
+class AppCds {
+	private static final String DIR = "app-cds";
+	private static final int MIN_JAVA_VERSION = 13;
+
+	final List<String> classpathArgs;
+	final List<String> vmArgs;
+
+	private AppCds(File classpathArgFile, List<String> vmArgs) {
+		this.classpathArgs = List.of("@" + classpathArgFile.getAbsolutePath());
+		this.vmArgs = vmArgs;
+	}
+
+	/**
+	 * Returns the classpath and JVM arguments for launching with an archive, or null if the running
+	 * JVM can't create dynamic archives. The classpath is passed in full through an {@code @argfile},
+	 * because the JVM doesn't archive classes from the {@code Class-Path} of a manifest-only jar, and
+	 * an {@code @argfile} has no command line length limit.
+	 */
+	static @Nullable AppCds forWorkspace(File workspaceDir, List<File> classpath, boolean initOnly)
+			throws IOException {
+		if (Runtime.version().feature() < MIN_JAVA_VERSION) {
+			System.out.println(
+					"AppCDS requires Java " + MIN_JAVA_VERSION + " or later, launching without it.");
+			return null;
+		}
+		var dir = new File(workspaceDir, DIR);
+		var key = key(classpath);
+		var classpathArgFile = new File(dir, "classpath-" + key + ".args");
+		var fullArchive = new File(dir, "ide-" + key + ".jsa");
+		var initOnlyArchive = new File(dir, "ide-" + key + "-init-only.jsa");
+		if (!classpathArgFile.isFile()) {
+			// the classpath changed, so anything recorded for the old one is stale
+			if (dir.exists()) {
+				FileMisc.delete(dir);
+			}
+			Files.createDirectories(dir.toPath());
+			var paths = new StringBuilder();
+			for (var file : classpath) {
+				if (paths.length() > 0) {
+					paths.append(File.pathSeparatorChar);
+				}
+				paths.append(file.getAbsolutePath());
+			}
+			Files.writeString(
+					classpathArgFile.toPath(), "-classpath " + quoteForArgFile(paths.toString()) + "\n");
+		}
+		if (fullArchive.isFile()) {
+			// a full archive has every class which an initOnly launch needs
+			Files.deleteIfExists(initOnlyArchive.toPath());
+		}
+		var archive = fullArchive.isFile() || !initOnly ? fullArchive : initOnlyArchive;
+		if (archive.isFile()) {
+			return new AppCds(
+					classpathArgFile, List.of("-XX:SharedArchiveFile=" + archive.getAbsolutePath()));
+		} else {
+			return new AppCds(
+					classpathArgFile, List.of("-XX:ArchiveClassesAtExit=" + archive.getAbsolutePath()));
+		}
+	}
+
+	/** Within quotes in an {@code @argfile}, a backslash is an escape character. */
+	private static String quoteForArgFile(String arg) {
+		return '"' + arg.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+	}
+
+	/**
+	 * The first 16 characters of a sha-256 of the JVM, and the path, size and last-modified time of
+	 * every jar on the classpath.
+	 */
+	private static String key(List<File> classpath) {
+		var builder = new StringBuilder();
+		builder.append(System.getProperty("java.home")).append('\n');
+		builder.append(System.getProperty("java.vm.version")).append('\n');
+		for (var file : classpath) {
+			builder.append(file.getAbsolutePath()).append(' ');
+			builder.append(file.length()).append(' ');
+			builder.append(file.lastModified()).append('\n');
+		}
+		return HashMisc.sha256Hex(builder.toString()).substring(0, 16);
+	}
+}
@@ -14,7 +14,10 @@
 package dev.equo.ide;
 
 import com.diffplug.common.swt.os.OS;
+import dev.equo.solstice.ActivationPlan;
+import dev.equo.solstice.ManifestIndex;
 import dev.equo.solstice.NestedJars;
+import dev.equo.solstice.PackageIndexedClassLoader;
 import dev.equo.solstice.SerializableMisc;
 import dev.equo.solstice.ShimIdeBootstrapServices;
 import dev.equo.solstice.SignedJars;
@@ -74,7 +77,7 @@ public class BuildPluginIdeMain {
 		public WorkspaceInit workspaceInit;
 		public ArrayList<File> classpath;
 		public BuildPluginIdeMain.DebugClasspath debugClasspath;
-		public Boolean initOnly, showConsole, useAtomos, debugIde;
+		public Boolean initOnly, showConsole, useAtomos, debugIde, useAppCds;
 		public String showConsoleFlag, cleanFlag;
 
 		public void launch() throws IOException, InterruptedException {
@@ -88,14 +91,26 @@ public class BuildPluginIdeMain {
 			Objects.requireNonNull(showConsole);
 			Objects.requireNonNull(useAtomos);
 			Objects.requireNonNull(debugIde);
+			Objects.requireNonNull(useAppCds);
 			Objects.requireNonNull(showConsoleFlag);
 			Objects.requireNonNull(cleanFlag);
 
 			ArrayList<File> classpathSorted = Launcher.copyAndSortClasspath(classpath);
 			SignedJars.stripIfNecessary(classpathSorted);
+			boolean indexedClassLoader = Boolean.getBoolean(PACKAGE_INDEXED_CLASSLOADER);
+			if (indexedClassLoader && useAppCds) {
+				// the JVM doesn't archive classes from a custom system classloader
+				System.out.println("AppCDS is enabled, so " + PACKAGE_INDEXED_CLASSLOADER + " is ignored.");
+				indexedClassLoader = false;
+			}
+			boolean nestedJarsInPlace =
+					indexedClassLoader && Boolean.getBoolean(PackageIndexedClassLoader.NESTED_JARS_IN_PLACE);
 			var nestedJarFolder = new File(workspaceDir, NestedJars.DIR);
-			for (var nested : NestedJars.inFiles(classpathSorted).extractAllNestedJars(nestedJarFolder)) {
-				classpathSorted.add(nested.getValue());
+			if (!nestedJarsInPlace) {
+				for (var nested :
+						NestedJars.inFiles(classpathSorted).extractAllNestedJars(nestedJarFolder)) {
+					classpathSorted.add(nested.getValue());
+				}
 			}
 			var vmArgs = new ArrayList<String>();
 			var environmentVars = new LinkedHashMap<String, String>();
@@ -142,9 +157,10 @@ public class BuildPluginIdeMain {
 
 			var ideHooksFile = new File(workspaceDir, "ide-hooks");
 			var ideHooksCopy = ideHooks.copy();
+			var manifestIndex = ManifestIndex.load(new File(workspaceDir, ManifestIndex.FILENAME));
 			// add any IdeHooks which were declared in jar manifests
 			for (var jar : classpathSorted) {
-				var ideHook = SolsticeManifest.parseJar(jar).getHeadersOriginal().get("Bundle-IdeHook");
+				var ideHook = manifestIndex.parseJar(jar).getHeadersOriginal().get("Bundle-IdeHook");
 				if (ideHook != null) {
 					ideHooksCopy.add(new IdeHookReflected(ideHook));
 				}
@@ -162,7 +178,8 @@ public class BuildPluginIdeMain {
 							.toPath()
 							.resolve("config/org.eclipse.equinox.simpleconfigurator/bundles.info");
 			Files.createDirectories(bundlesInfo.getParent());
-			Files.writeString(bundlesInfo, bundlesDotInfo(classpathSorted));
+			Files.writeString(bundlesInfo, bundlesDotInfo(classpathSorted, manifestIndex));
+			manifestIndex.save();
 
 			debugClasspath.printWithHead(
 					"jars about to be launched", classpathSorted.stream().map(File::getAbsolutePath));
@@ -176,6 +193,12 @@ public class BuildPluginIdeMain {
 				vmArgs.add("-XstartOnFirstThread");
 			}
 			vmArgs.add("-Dorg.slf4j.simpleLogger.defaultLogLevel=" + (isBlocking ? "info" : "error"));
+			for (var property : List.of(PARALLEL_ACTIVATION, ACTIVATE_ON_MAIN_THREAD)) {
+				var value = System.getProperty(property);
+				if (value != null) {
+					vmArgs.add("-D" + property + "=" + value);
+				}
+			}
 
 			if (debugIde) {
 				vmArgs.add("-Xdebug");
@@ -206,10 +229,21 @@ public class BuildPluginIdeMain {
 						};
 			}
 
+			var appCds =
+					useAppCds ? AppCds.forWorkspace(workspaceDir, classpathSorted, initOnly) : null;
+			if (appCds != null) {
+				vmArgs.addAll(appCds.vmArgs);
+			}
+			if (indexedClassLoader) {
+				vmArgs.add("-Djava.system.class.loader=" + PackageIndexedClassLoader.class.getName());
+				if (nestedJarsInPlace) {
+					vmArgs.add("-D" + PackageIndexedClassLoader.NESTED_JARS_IN_PLACE + "=true");
+				}
+			}
 			var exitCode =
-					Launcher.launchJavaBlocking(
+					Launcher.launchJavaBlockingWithClasspathArgs(
 							isBlocking,
-							classpathSorted,
+							appCds != null ? appCds.classpathArgs : Launcher.classpathArgs(classpathSorted),
 							vmArgs,
 							BuildPluginIdeMain.class.getName(),
 							monitorProcess,
@@ -232,6 +266,47 @@ public class BuildPluginIdeMain {
 		}
 	}
 
+	private static void startBundles(Solstice solstice) {
+		solstice.start("org.apache.felix.scr");
+		int parallelActivation = Integer.getInteger(PARALLEL_ACTIVATION, 0);
+		if (parallelActivation > 1) {
+			var onMainThread = new ArrayList<>(Fudge.activateOnMainThread());
+			var extraOnMainThread = System.getProperty(ACTIVATE_ON_MAIN_THREAD, "");
+			for (var name : extraOnMainThread.split(",")) {
+				if (!name.isBlank()) {
+					onMainThread.add(name.trim());
+				}
+			}
+			solstice.startAllWithLazyInParallel(false, parallelActivation, onMainThread);
+		} else {
+			solstice.startAllWithLazy(false);
+		}
+		for (var eagerStart :
+				solstice.bundlesOnClasspathOutOf(Fudge.activateEagerWithoutTransitives())) {
+			solstice.startWithoutTransitives(eagerStart);
+		}
+		solstice.start("org.eclipse.ui.ide.application");
+	}
+
+	/**
+	 * System property with the number of threads to activate eager bundles on, see {@link
+	 * Solstice#startAllWithLazyInParallel}. Unset or less than 2 activates them one at a time.
+	 */
+	public static final String PARALLEL_ACTIVATION = "solstice.parallelActivation";
+
+	/**
+	 * System property with a comma-separated list of bundles which must be activated on the main
+	 * thread, in addition to the built-in ones, when {@link #PARALLEL_ACTIVATION} is enabled.
+	 */
+	public static final String ACTIVATE_ON_MAIN_THREAD = "solstice.activateOnMainThread";
+
+	/**
+	 * System property which launches the IDE with {@link PackageIndexedClassLoader} as its system
+	 * classloader, unless AppCDS is enabled. Combine with {@link
+	 * PackageIndexedClassLoader#NESTED_JARS_IN_PLACE} to skip extracting nested jars.
+	 */
+	public static final String PACKAGE_INDEXED_CLASSLOADER = "solstice.packageIndexedClassLoader";
+
 	public enum DebugClasspath {
 		disabled,
 		names,
@@ -283,7 +358,7 @@ public class BuildPluginIdeMain {
 		}
 	}
 
-	private static String bundlesDotInfo(List<File> cp) {
+	private static String bundlesDotInfo(List<File> cp, ManifestIndex manifestIndex) {
 		var buffer = new StringBuilder();
 		var newline = "\n";
 		// for a "real" file these should be different in different places...
@@ -296,7 +371,7 @@ public class BuildPluginIdeMain {
 		buffer.append(newline);
 		for (var file : cp) {
 			try {
-				SolsticeManifest manifest = SolsticeManifest.parseJar(file);
+				SolsticeManifest manifest = manifestIndex.parseJar(file);
 				if (manifest == null
 						|| manifest.getSymbolicName() == null
 						|| manifest.getVersion() == null) {
@@ -356,7 +431,9 @@ public class BuildPluginIdeMain {
 
 		NestedJars.onClassPath()
 				.confirmAllNestedJarsArePresentOnClasspath(new File(installDir, NestedJars.DIR));
-		var solstice = Solstice.findBundlesOnClasspath();
+		var solstice =
+				Solstice.findBundlesOnClasspath(
+						ManifestIndex.load(new File(installDir, ManifestIndex.FILENAME)));
 		solstice.warnAndModifyManifestsToFix();
 
 		IdeHook.InstantiatedList ideHooks = ideHooksParsed.instantiate();
@@ -394,13 +471,16 @@ public class BuildPluginIdeMain {
 		}
 		ShimIdeBootstrapServices.shimAndAtomos(props, solstice.getContext());
 
-		solstice.start("org.apache.felix.scr");
-		solstice.startAllWithLazy(false);
-		for (var eagerStart :
-				solstice.bundlesOnClasspathOutOf(Fudge.activateEagerWithoutTransitives())) {
-			solstice.startWithoutTransitives(eagerStart);
+		// a launch with the same classpath replays the previous activation order without resolving
+		var activationPlanFile = new File(installDir, ActivationPlan.FILENAME);
+		var activationVariant = useAtomos ? "atomos" : "shim";
+		var activationPlan = ActivationPlan.load(activationPlanFile, solstice, activationVariant);
+		if (activationPlan != null) {
+			activationPlan.replay(solstice);
+		} else {
+			startBundles(solstice);
+			ActivationPlan.save(activationPlanFile, solstice, activationVariant);
 		}
-		solstice.start("org.eclipse.ui.ide.application");
 		if (useAtomos) {
 			// the spelled-out package is on purpose so that Atomos can remain an optional component
 			// works together with
@@ -32,4 +32,18 @@ class Fudge {
 				"org.eclipse.egit.core",
 				"org.eclipse.jsch.core");
 	}
+
+	/**
+	 * Called by {@link dev.equo.ide.BuildPluginIdeMain} when it activates bundles in parallel, these
+	 * stay on the main thread because their activators may touch the display.
+	 */
+	static List<String> activateOnMainThread() {
+		return List.of(
+				"org.eclipse.swt",
+				"org.eclipse.jface",
+				"org.eclipse.ui",
+				"org.eclipse.ui.workbench",
+				"org.eclipse.e4.ui.workbench",
+				"org.eclipse.e4.ui.workbench.swt");
+	}
 }
@@ -14,6 +14,9 @@
 package dev.equo.ide;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 
 @SuppressWarnings("serial")
@@ -24,13 +27,31 @@ class IdeHookLockFile implements IdeHook {
 	}
 
 	private final File workspaceDir;
-	private final ArrayList<File> classpath;
+	private transient ArrayList<File> classpath;
 
 	private IdeHookLockFile(File workspaceDir, ArrayList<File> classpath) {
 		this.workspaceDir = workspaceDir;
 		this.classpath = classpath;
 	}
 
+	/** The classpath can be hundreds of files, which serialize much more compactly as strings. */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(classpath.size());
+		for (var file : classpath) {
+			out.writeUTF(file.getPath());
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		int size = in.readInt();
+		classpath = new ArrayList<>(size);
+		for (int i = 0; i < size; ++i) {
+			classpath.add(new File(in.readUTF()));
+		}
+	}
+
 	@Override
 	public IdeHookInstantiated instantiate() {
 		return new Instantiated();
@@ -39,7 +39,7 @@ public class IdeLockFile {
 		if (files == null) {
 			FileMisc.delete(new File(workspaceDir, CLASSPATH_FILENAME));
 		} else {
-			SerializableMisc.toFile(files, new File(workspaceDir, CLASSPATH_FILENAME));
+			SerializableMisc.pathsToFile(files, new File(workspaceDir, CLASSPATH_FILENAME));
 		}
 	}
 
@@ -47,9 +47,8 @@ public class IdeLockFile {
 		return new File(workspaceDir, CLASSPATH_FILENAME).exists();
 	}
 
-	@SuppressWarnings("unchecked")
 	public ArrayList<File> readClasspath() {
-		return SerializableMisc.fromFile(ArrayList.class, new File(workspaceDir, CLASSPATH_FILENAME));
+		return SerializableMisc.pathsFromFile(new File(workspaceDir, CLASSPATH_FILENAME));
 	}
 
 	///////////////
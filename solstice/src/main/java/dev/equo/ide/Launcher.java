@@ -13,6 +13,7 @@
  *******************************************************************************/
 package dev.equo.ide;
 
+import dev.equo.solstice.ManifestIndex;
 import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -47,6 +48,29 @@ public class Launcher {
 			@Nullable Consumer<Process> monitorProcess,
 			String... args)
 			throws IOException, InterruptedException {
+		return launchJavaBlockingWithClasspathArgs(
+				blocking, classpathArgs(cp), vmArgs, mainClass, monitorProcess, args);
+	}
+
+	/** Arguments which set the given classpath through a temporary jar with a Class-Path entry. */
+	static List<String> classpathArgs(List<File> cp) throws IOException {
+		File classpathJar = Launcher.toJarWithClasspath(cp);
+		classpathJar.deleteOnExit();
+		return List.of("-classpath", classpathJar.getAbsolutePath());
+	}
+
+	/**
+	 * Same as {@link #launchJavaBlocking}, except the classpath is given as arguments to the java
+	 * command, e.g. {@code @argfile}.
+	 */
+	static int launchJavaBlockingWithClasspathArgs(
+			boolean blocking,
+			List<String> classpathArgs,
+			List<String> vmArgs,
+			String mainClass,
+			@Nullable Consumer<Process> monitorProcess,
+			String... args)
+			throws IOException, InterruptedException {
 		String javaHome = System.getProperty("java.home");
 		String javaBin = javaHome + File.separator + "bin" + File.separator + "java";
 		String javaCmd;
@@ -56,14 +80,10 @@ public class Launcher {
 			javaCmd = "java";
 		}
 
-		File classpathJar = Launcher.toJarWithClasspath(cp);
-		classpathJar.deleteOnExit();
-
 		List<String> command = new ArrayList<>();
 		command.add(javaCmd);
 		command.addAll(vmArgs);
-		command.add("-classpath");
-		command.add(classpathJar.getAbsolutePath());
+		command.addAll(classpathArgs);
 		command.add(mainClass);
 		command.addAll(Arrays.asList(args));
 
@@ -141,7 +161,8 @@ public class Launcher {
 		}
 	}
 
-	private static final String LONG_CLASSPATH_JAR_PREFIX = "long-classpath";
+	/** Never indexed by {@link ManifestIndex}, because it is a new temp file for every launch. */
+	private static final String LONG_CLASSPATH_JAR_PREFIX = ManifestIndex.TRANSIENT_JAR_PREFIX;
 
 	/** Creates a jar with a Class-Path entry to workaround the windows classpath limitation. */
 	private static File toJarWithClasspath(List<File> files) throws IOException {
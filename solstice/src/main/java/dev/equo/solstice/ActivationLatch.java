@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Makes sure that a bundle is activated only once, and that every other caller waits until that
+ * activation has finished. A caller which would end up waiting on itself, either because its own
+ * activator started the bundle again or through a chain of threads waiting on each other, returns
+ * right away instead, just as it would if everything were started on a single thread.
+ */
+class ActivationLatch {
+	/** The latch which each thread is currently waiting on. */
+	private static final ConcurrentHashMap<Thread, ActivationLatch> waitingFor =
+			new ConcurrentHashMap<>();
+
+	private final AtomicReference<Thread> owner = new AtomicReference<>();
+	private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+	/**
+	 * Returns true if the caller should activate, in which case it must call {@link #finish()}.
+	 * Otherwise it returns false once the activation has finished, or would deadlock.
+	 */
+	boolean begin() {
+		var current = Thread.currentThread();
+		if (owner.compareAndSet(null, current)) {
+			return true;
+		}
+		if (done.isDone()) {
+			return false;
+		}
+		// registered before the check, so that of two threads waiting on each other, at least one
+		// sees it
+		waitingFor.put(current, this);
+		try {
+			if (!waitsOn(current)) {
+				done.join();
+			}
+		} finally {
+			waitingFor.remove(current);
+		}
+		return false;
+	}
+
+	/** True if the chain of owners and the latches they wait on leads back to the given thread. */
+	private boolean waitsOn(Thread current) {
+		var latch = this;
+		// the chain can only be as long as the number of waiting threads, unless it has a cycle
+		for (int hops = waitingFor.size() + 1; latch != null && hops > 0; --hops) {
+			var latchOwner = latch.owner.get();
+			if (latchOwner == current) {
+				return true;
+			}
+			latch = waitingFor.get(latchOwner);
+		}
+		return false;
+	}
+
+	/** Releases every caller which is waiting for the activation. */
+	void finish() {
+		done.complete(null);
+	}
+
+	/** True once {@link #finish()} has been called. */
+	boolean isDone() {
+		return done.isDone();
+	}
+}
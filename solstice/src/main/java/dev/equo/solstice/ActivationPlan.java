@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The exact order in which a successful launch activated its bundles, along with how long each
+ * activation took. It is keyed by a hash of the bundles on the classpath, so a later launch with
+ * the same classpath can {@link #replay} it without resolving any packages or capabilities, and a
+ * launch with a different classpath resolves dynamically and records a new plan.
+ */
+public class ActivationPlan {
+	/** The conventional name of the plan within a workspace directory. */
+	public static final String FILENAME = "activation-plan";
+
+	private static final String FORMAT = "activation-plan";
+	private static final String KEY = "key";
+	private static final String ACTIVATIONS = "activations";
+
+	private final File file;
+	private final List<SolsticeManifest> order;
+	private final long totalMicros;
+
+	private ActivationPlan(File file, List<SolsticeManifest> order, long totalMicros) {
+		this.file = file;
+		this.order = order;
+		this.totalMicros = totalMicros;
+	}
+
+	/**
+	 * Returns the plan recorded in the given file, or null if there isn't one, if it is unreadable,
+	 * or if it was recorded for a different classpath or variant.
+	 */
+	public static @Nullable ActivationPlan load(File file, Solstice solstice, String variant) {
+		return FileMisc.readOrNull(
+				file,
+				planFile -> {
+					var sections = SerializableMisc.linesFromFile(FORMAT, planFile);
+					if (sections == null || !List.of(key(solstice, variant)).equals(sections.get(KEY))) {
+						return null;
+					}
+					var order = new ArrayList<SolsticeManifest>();
+					long totalMicros = 0;
+					for (var line : sections.get(ACTIVATIONS)) {
+						int space = line.indexOf(' ');
+						var manifest = solstice.bundleForJarUrl(line.substring(space + 1));
+						if (manifest == null) {
+							return null;
+						}
+						order.add(manifest);
+						totalMicros += Long.parseLong(line.substring(0, space));
+					}
+					return new ActivationPlan(file, order, totalMicros);
+				});
+	}
+
+	/**
+	 * Saves every activation which the given Solstice has done so far as the plan for its classpath.
+	 * If any of them failed, then nothing is saved and any previous plan is deleted, so that a failed
+	 * launch is never replayed.
+	 */
+	public static void save(File file, Solstice solstice, String variant) {
+		if (solstice.activationFailures() > 0) {
+			logger.info(
+					"not recording an activation plan, {} activations failed",
+					solstice.activationFailures());
+			Unchecked.get(() -> Files.deleteIfExists(file.toPath()));
+			return;
+		}
+		var activations = new ArrayList<String>();
+		solstice.forEachActivation(
+				(manifest, micros) -> activations.add(micros + " " + manifest.getJarUrl()));
+		var sections = new LinkedHashMap<String, List<String>>();
+		sections.put(KEY, List.of(key(solstice, variant)));
+		sections.put(ACTIVATIONS, activations);
+		FileMisc.writeAtomically(
+				file, tempFile -> SerializableMisc.linesToFile(FORMAT, sections, tempFile));
+	}
+
+	/**
+	 * Activates every bundle in the recorded order, without resolving anything. If any activation
+	 * fails, then the plan is deleted so that the next launch resolves dynamically again.
+	 */
+	public void replay(Solstice solstice) {
+		logger.info(
+				"replaying {} activations which took {} ms when recorded",
+				order.size(),
+				totalMicros / 1000);
+		solstice.replay(order);
+		if (solstice.activationFailures() > 0) {
+			Unchecked.get(() -> Files.deleteIfExists(file.toPath()));
+		}
+	}
+
+	/**
+	 * A sha-256 of the Solstice version, the given variant, and the jar, name and version of every
+	 * bundle in classpath order.
+	 */
+	private static String key(Solstice solstice, String variant) {
+		var builder = new StringBuilder();
+		builder.append(NestedJars.solsticeVersion()).append('\n');
+		builder.append(variant).append('\n');
+		for (var manifest : solstice.bundles()) {
+			builder.append(manifest.getJarUrl()).append(' ');
+			builder.append(manifest.getSymbolicName()).append(' ');
+			builder.append(manifest.getVersion()).append('\n');
+		}
+		return HashMisc.sha256Hex(builder.toString());
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(ActivationPlan.class);
+}
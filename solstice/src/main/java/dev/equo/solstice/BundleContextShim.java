@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -121,6 +122,28 @@ public class BundleContextShim extends ServiceRegistry {
 		bundles.remove(systemIdx);
 		bundles.add(0, systemBundle);
 
+		// the bundle set never changes after hydration, so every lookup is indexed once up front
+		var bySymbolicName = new HashMap<String, ShimBundle>();
+		var byId = new HashMap<Long, ShimBundle>();
+		var byLocation = new HashMap<String, ShimBundle>();
+		var fragmentsByHost = new HashMap<String, List<Bundle>>();
+		for (var b : bundles) {
+			bySymbolicName.putIfAbsent(b.getSymbolicName(), b);
+			byId.putIfAbsent(b.getBundleId(), b);
+			byLocation.putIfAbsent(b.getLocation(), b);
+			var host = b.manifest.fragmentHost();
+			if (host != null) {
+				fragmentsByHost.computeIfAbsent(host, unused -> new ArrayList<>()).add(b);
+			}
+		}
+		this.bySymbolicName = Collections.unmodifiableMap(bySymbolicName);
+		this.byId = Collections.unmodifiableMap(byId);
+		this.byLocation = Collections.unmodifiableMap(byLocation);
+		var fragmentArrays = new HashMap<String, Bundle[]>();
+		fragmentsByHost.forEach(
+				(host, fragments) -> fragmentArrays.put(host, fragments.toArray(new Bundle[0])));
+		this.fragmentsByHost = Collections.unmodifiableMap(fragmentArrays);
+
 		for (var b : bundles) {
 			b.state = Bundle.INSTALLED;
 			notifyBundleListeners(BundleEvent.INSTALLED, b);
@@ -139,14 +162,13 @@ public class BundleContextShim extends ServiceRegistry {
 	}
 
 	private final List<ShimBundle> bundles = new ArrayList<>();
+	private final Map<String, ShimBundle> bySymbolicName;
+	private final Map<Long, ShimBundle> byId;
+	private final Map<String, ShimBundle> byLocation;
+	private final Map<String, Bundle[]> fragmentsByHost;
 
 	public ShimBundle bundleForSymbolicName(String name) {
-		for (ShimBundle bundle : bundles) {
-			if (name.equals(bundle.getSymbolicName())) {
-				return bundle;
-			}
-		}
-		return null;
+		return bySymbolicName.get(name);
 	}
 
 	final PackageAdmin packageAdmin =
@@ -179,13 +201,8 @@ public class BundleContextShim extends ServiceRegistry {
 
 				@Override
 				public Bundle[] getFragments(Bundle bundle) {
-					List<Bundle> fragments = new ArrayList<>();
-					for (var candidate : bundles) {
-						if (Objects.equals(candidate.manifest.fragmentHost(), bundle.getSymbolicName())) {
-							fragments.add(candidate);
-						}
-					}
-					return fragments.toArray(new Bundle[0]);
+					var fragments = fragmentsByHost.get(bundle.getSymbolicName());
+					return fragments == null ? new Bundle[0] : fragments.clone();
 				}
 			};
 
@@ -215,7 +232,10 @@ public class BundleContextShim extends ServiceRegistry {
 						}
 					} else {
 						var cap = new Capability(req.getNamespace(), filter.getKey(), filter.getValue());
-						var result = capabilities.getAnySupersetOf(cap);
+						ShimBundle result;
+						synchronized (capabilities) {
+							result = capabilities.getAnySupersetOf(cap);
+						}
 						if (result == null) {
 							return Collections.emptyList();
 						}
@@ -249,7 +269,7 @@ public class BundleContextShim extends ServiceRegistry {
 		if (Constants.SYSTEM_BUNDLE_LOCATION.equals(location)) {
 			return systemBundle;
 		} else {
-			throw Unimplemented.onPurpose();
+			return byLocation.get(location);
 		}
 	}
 
@@ -296,7 +316,11 @@ public class BundleContextShim extends ServiceRegistry {
 		// TODO: not sure if we can survive without FrameworkEvents
 	}
 
-	synchronized void notifyBundleListeners(int type, ShimBundle bundle) {
+	/**
+	 * Not synchronized, because listeners register services, and bundles are activated from several
+	 * threads. The listener list is copy-on-write.
+	 */
+	void notifyBundleListeners(int type, ShimBundle bundle) {
 		var event = new BundleEvent(type, bundle);
 		for (BundleListener listener : bundleListeners) {
 			try {
@@ -323,12 +347,7 @@ public class BundleContextShim extends ServiceRegistry {
 		if (id == 0) {
 			return systemBundle;
 		} else {
-			for (var bundle : bundles) {
-				if (bundle.getBundleId() == id) {
-					return bundle;
-				}
-			}
-			return null;
+			return byId.get(id);
 		}
 	}
 }
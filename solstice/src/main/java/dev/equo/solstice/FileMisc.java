@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import javax.annotation.Nullable;
+
+/** Reads and writes the index files which are shared by every process using the same folder. */
+class FileMisc {
+	private FileMisc() {}
+
+	/** Returns the jar file for a {@code jar:file:...!} url, or null for anything else. */
+	static @Nullable File jarFile(String jarUrl) {
+		if (!jarUrl.startsWith("jar:file:") || !jarUrl.endsWith("!")) {
+			return null;
+		}
+		try {
+			return Path.of(URI.create(jarUrl.substring("jar:".length(), jarUrl.length() - 1))).toFile();
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the given file, or returns null if it is missing or unreadable. An index is only ever a
+	 * cache, so a corrupt one is the same as a missing one, and it is rebuilt when it is next saved.
+	 */
+	@Nullable
+	static <T> T readOrNull(File file, Read<T> read) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			return read.from(file);
+		} catch (IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the given file into a temp file next to it, then renames it into place, so that another
+	 * process never reads it half-written.
+	 */
+	static void writeAtomically(File file, Write write) {
+		try {
+			Files.createDirectories(file.getParentFile().toPath());
+			var tempFile = tempFileFor(file);
+			try {
+				write.to(tempFile.toFile());
+				moveAtomically(tempFile, file.toPath());
+			} finally {
+				Files.deleteIfExists(tempFile);
+			}
+		} catch (IOException e) {
+			throw Unchecked.wrap(e);
+		}
+	}
+
+	/**
+	 * A unique temp file next to the given one. Unlike {@link Files#createTempFile}, it gets the same
+	 * permissions as any other file.
+	 */
+	static Path tempFileFor(File file) {
+		return new File(file.getParentFile(), file.getName() + "." + UUID.randomUUID() + ".tmp")
+				.toPath();
+	}
+
+	static void moveAtomically(Path source, Path target) throws IOException {
+		try {
+			Files.move(
+					source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	interface Read<T> {
+		T from(File file) throws IOException;
+	}
+
+	interface Write {
+		void to(File file) throws IOException;
+	}
+}
@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** The sha-256 digests and hex encoding which key every on-disk cache. */
+public class HashMisc {
+	private HashMisc() {}
+
+	/** Returns a new sha-256 digest. */
+	public static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw Unchecked.wrap(e);
+		}
+	}
+
+	/** Returns the hex sha-256 of the utf-8 bytes of the given text. */
+	public static String sha256Hex(String text) {
+		return toHex(sha256().digest(text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/** Returns the given bytes as lowercase hex. */
+	public static String toHex(byte[] bytes) {
+		var hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+			hex.append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,346 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+import org.osgi.framework.Version;
+
+/**
+ * A persistent index of parsed {@link SolsticeManifest}, keyed by jar and validated by the jar's
+ * size and last-modified time. The build plugin and the launched IDE share one index in the
+ * workspace directory, so that a warm launch doesn't open or parse any manifests at all.
+ */
+public class ManifestIndex {
+	/** The conventional name of the index within a workspace directory. */
+	public static final String FILENAME = "manifest-index";
+
+	/**
+	 * Jars whose name starts with this prefix are temporary, such as the jar which the launcher
+	 * creates for a long classpath, so they are never indexed.
+	 */
+	public static final String TRANSIENT_JAR_PREFIX = "long-classpath";
+
+	private static final int MAGIC = 0x534d4958; // SMIX
+	private static final int VERSION = 1;
+
+	/** An index which is never loaded or saved, so every manifest is parsed. */
+	public static ManifestIndex none() {
+		return new ManifestIndex(null);
+	}
+
+	/** Loads the index at the given file, or starts an empty one if it is missing or unreadable. */
+	public static ManifestIndex load(File file) {
+		var index = new ManifestIndex(file);
+		var entries = FileMisc.readOrNull(file, ManifestIndex::read);
+		if (entries != null) {
+			index.entries.putAll(entries);
+		}
+		return index;
+	}
+
+	private static Map<String, Entry> read(File file) throws IOException {
+		try (var input =
+				new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+				return Map.of();
+			}
+			int size = input.readInt();
+			var entries = new LinkedHashMap<String, Entry>(size * 4 / 3 + 1);
+			for (int i = 0; i < size; ++i) {
+				var entry = Entry.read(input);
+				entries.put(entry.jarUrl, entry);
+			}
+			return entries;
+		}
+	}
+
+	private final @Nullable File file;
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+	private volatile boolean changed;
+
+	private ManifestIndex(@Nullable File file) {
+		this.file = file;
+	}
+
+	/** Returns the manifest of the given jar, see {@link SolsticeManifest#parseJar(File)}. */
+	public SolsticeManifest parseJar(File jar) throws IOException {
+		return parse(new URL("jar:" + jar.toURI() + "!" + SolsticeManifest.SLASH_MANIFEST_PATH), -1);
+	}
+
+	/** Returns the manifest at the given url, from the index if the jar hasn't changed. */
+	SolsticeManifest parse(URL manifestURL, int classpathOrder) {
+		var externalForm = manifestURL.toExternalForm();
+		var jarUrl =
+				externalForm.substring(
+						0, externalForm.length() - SolsticeManifest.SLASH_MANIFEST_PATH.length());
+		var jar = FileMisc.jarFile(jarUrl);
+		if (file == null || jar == null || jar.getName().startsWith(TRANSIENT_JAR_PREFIX)) {
+			return new SolsticeManifest(manifestURL, classpathOrder);
+		}
+		long size = jar.length();
+		long lastModified = jar.lastModified();
+		var entry = entries.get(jarUrl);
+		if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+			return entry.toManifest(classpathOrder);
+		}
+		var manifest = new SolsticeManifest(manifestURL, classpathOrder);
+		entries.put(jarUrl, new Entry(jarUrl, size, lastModified, manifest));
+		changed = true;
+		return manifest;
+	}
+
+	/**
+	 * Writes the index if anything was added to it since it was loaded, dropping the jars which no
+	 * longer exist. The build plugin and the launched IDE use different subsets of the same index, so
+	 * an entry is kept even if this process didn't use it.
+	 */
+	public void save() {
+		if (file == null || !changed) {
+			return;
+		}
+		entries
+				.values()
+				.removeIf(
+						entry -> {
+							var jar = FileMisc.jarFile(entry.jarUrl);
+							return jar == null || !jar.isFile();
+						});
+		FileMisc.writeAtomically(
+				file,
+				tempFile -> {
+					try (var output =
+							new DataOutputStream(
+									new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024))) {
+						output.writeInt(MAGIC);
+						output.writeInt(VERSION);
+						var snapshot = new ArrayList<>(entries.values());
+						output.writeInt(snapshot.size());
+						for (var entry : snapshot) {
+							entry.write(output);
+						}
+					}
+				});
+		changed = false;
+	}
+
+	/**
+	 * A snapshot of everything which {@link SolsticeManifest} parsed, taken before {@link
+	 * Solstice#warnAndModifyManifestsToFix()} has a chance to modify it.
+	 */
+	private static class Entry {
+		final String jarUrl;
+		final long size, lastModified;
+		final Map<String, String> headers;
+		final @Nullable String symbolicName;
+		final String version;
+		final List<String> requiredBundles, pkgImports, pkgExports;
+		final List<Capability> capProvides, capRequires;
+		final boolean lazy;
+
+		Entry(String jarUrl, long size, long lastModified, SolsticeManifest manifest) {
+			this(
+					jarUrl,
+					size,
+					lastModified,
+					new LinkedHashMap<>(manifest.getHeadersOriginal()),
+					manifest.getSymbolicName(),
+					manifest.getVersion().toString(),
+					List.copyOf(manifest.requiredBundles),
+					List.copyOf(manifest.pkgImports),
+					List.copyOf(manifest.pkgExports),
+					copy(manifest.capProvides),
+					copy(manifest.capRequires),
+					manifest.lazy);
+		}
+
+		private Entry(
+				String jarUrl,
+				long size,
+				long lastModified,
+				Map<String, String> headers,
+				@Nullable String symbolicName,
+				String version,
+				List<String> requiredBundles,
+				List<String> pkgImports,
+				List<String> pkgExports,
+				List<Capability> capProvides,
+				List<Capability> capRequires,
+				boolean lazy) {
+			this.jarUrl = jarUrl;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.headers = headers;
+			this.symbolicName = symbolicName;
+			this.version = version;
+			this.requiredBundles = requiredBundles;
+			this.pkgImports = pkgImports;
+			this.pkgExports = pkgExports;
+			this.capProvides = capProvides;
+			this.capRequires = capRequires;
+			this.lazy = lazy;
+		}
+
+		SolsticeManifest toManifest(int classpathOrder) {
+			return new SolsticeManifest(
+					jarUrl,
+					classpathOrder,
+					headers,
+					symbolicName,
+					Version.parseVersion(version),
+					new ArrayList<>(requiredBundles),
+					new ArrayList<>(pkgImports),
+					new ArrayList<>(pkgExports),
+					copy(capProvides),
+					copy(capRequires),
+					lazy);
+		}
+
+		/** Capabilities are mutable, and required capabilities are removed from their list. */
+		private static List<Capability> copy(List<Capability> capabilities) {
+			if (capabilities.isEmpty()) {
+				return Collections.emptyList();
+			}
+			var copy = new ArrayList<Capability>(capabilities.size());
+			for (var capability : capabilities) {
+				var capCopy = new Capability(capability.namespace);
+				capCopy.keyValue.addAll(capability.keyValue);
+				copy.add(capCopy);
+			}
+			return copy;
+		}
+
+		void write(DataOutputStream output) throws IOException {
+			writeString(output, jarUrl);
+			output.writeLong(size);
+			output.writeLong(lastModified);
+			output.writeInt(headers.size());
+			for (var header : headers.entrySet()) {
+				writeString(output, header.getKey());
+				writeString(output, header.getValue());
+			}
+			output.writeBoolean(symbolicName != null);
+			if (symbolicName != null) {
+				writeString(output, symbolicName);
+			}
+			writeString(output, version);
+			writeStrings(output, requiredBundles);
+			writeStrings(output, pkgImports);
+			writeStrings(output, pkgExports);
+			writeCapabilities(output, capProvides);
+			writeCapabilities(output, capRequires);
+			output.writeBoolean(lazy);
+		}
+
+		static Entry read(DataInputStream input) throws IOException {
+			var jarUrl = readString(input);
+			long size = input.readLong();
+			long lastModified = input.readLong();
+			int headerCount = input.readInt();
+			var headers = new LinkedHashMap<String, String>(headerCount * 4 / 3 + 1);
+			for (int i = 0; i < headerCount; ++i) {
+				headers.put(readString(input), readString(input));
+			}
+			var symbolicName = input.readBoolean() ? readString(input) : null;
+			var version = readString(input);
+			var requiredBundles = readStrings(input);
+			var pkgImports = readStrings(input);
+			var pkgExports = readStrings(input);
+			var capProvides = readCapabilities(input);
+			var capRequires = readCapabilities(input);
+			boolean lazy = input.readBoolean();
+			return new Entry(
+					jarUrl,
+					size,
+					lastModified,
+					headers,
+					symbolicName,
+					version,
+					requiredBundles,
+					pkgImports,
+					pkgExports,
+					capProvides,
+					capRequires,
+					lazy);
+		}
+	}
+
+	private static void writeCapabilities(DataOutputStream output, List<Capability> capabilities)
+			throws IOException {
+		output.writeInt(capabilities.size());
+		for (var capability : capabilities) {
+			writeString(output, capability.namespace);
+			writeStrings(output, capability.keyValue);
+		}
+	}
+
+	private static List<Capability> readCapabilities(DataInputStream input) throws IOException {
+		int count = input.readInt();
+		if (count == 0) {
+			return Collections.emptyList();
+		}
+		var capabilities = new ArrayList<Capability>(count);
+		for (int i = 0; i < count; ++i) {
+			var capability = new Capability(readString(input));
+			capability.keyValue.addAll(readStrings(input));
+			capabilities.add(capability);
+		}
+		return capabilities;
+	}
+
+	private static void writeStrings(DataOutputStream output, List<String> strings)
+			throws IOException {
+		output.writeInt(strings.size());
+		for (var string : strings) {
+			writeString(output, string);
+		}
+	}
+
+	private static List<String> readStrings(DataInputStream input) throws IOException {
+		int count = input.readInt();
+		var strings = new ArrayList<String>(count);
+		for (int i = 0; i < count; ++i) {
+			strings.add(readString(input));
+		}
+		return strings;
+	}
+
+	/** Unlike {@link DataOutputStream#writeUTF}, manifest headers can be longer than 64k. */
+	private static void writeString(DataOutputStream output, String string) throws IOException {
+		var bytes = string.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readString(DataInputStream input) throws IOException {
+		var bytes = new byte[input.readInt()];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
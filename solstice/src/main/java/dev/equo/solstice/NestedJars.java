@@ -17,12 +17,14 @@ import dev.equo.solstice.p2.CacheLocations;
 import dev.equo.solstice.p2.P2QueryResult;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.JarURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -31,12 +33,15 @@ import java.util.Collection;
 import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.annotation.Nullable;
 import org.slf4j.LoggerFactory;
@@ -192,6 +197,10 @@ public abstract class NestedJars {
 
 		public void confirmAllNestedJarsArePresentOnClasspath(File nestedJarFolder) {
 			nestedJarsOnClasspath = new HashSet<>();
+			if (inPlace()) {
+				// nothing was extracted, the system classloader reads them from their parent jars
+				return;
+			}
 			var entries = extractAllNestedJars(nestedJarFolder);
 			entries.removeIf(
 					entry -> {
@@ -234,6 +243,15 @@ public abstract class NestedJars {
 			}
 		}
 
+		/** True if the system classloader serves nested jars straight from their parent jars. */
+		private static boolean inPlace() {
+			return Boolean.getBoolean(PackageIndexedClassLoader.NESTED_JARS_IN_PLACE)
+					&& ClassLoader.getSystemClassLoader()
+							.getClass()
+							.getName()
+							.equals(PackageIndexedClassLoader.class.getName());
+		}
+
 		private static final String JAR_COLON_FILE_COLON = "jar:file:";
 
 		public boolean isNestedJar(SolsticeManifest manifest) {
@@ -254,53 +272,143 @@ public abstract class NestedJars {
 	}
 
 	public static NestedJars inFiles(Iterable<File> files) {
-		return new NestedJars() {
-			@Override
-			protected List<URL> listNestedJars() {
-				List<URL> nestedJars = new ArrayList<>();
-				for (File file : files) {
-					try (var jarFile = new JarFile(file)) {
-						var zipEntry = jarFile.getEntry(SolsticeManifest.MANIFEST_PATH);
-						if (zipEntry != null) {
-							var jarUrl = "jar:" + file.toURI().toURL().toExternalForm() + "!";
-							try (var input = jarFile.getInputStream(zipEntry)) {
-								addNestedJarsFromManifest(nestedJars, jarUrl, input);
-							}
-						}
-					} catch (IOException e) {
-						throw Unchecked.wrap(e);
+		return new InFiles(files);
+	}
+
+	private static class InFiles extends NestedJars {
+		private final Iterable<File> files;
+
+		private InFiles(Iterable<File> files) {
+			this.files = files;
+		}
+
+		@Override
+		protected List<URL> listNestedJars() {
+			List<URL> nestedJars = new ArrayList<>();
+			for (File file : files) {
+				nestedJars.addAll(nestedJarsOf(file));
+			}
+			return nestedJars;
+		}
+
+		/**
+		 * Every file is a parent, even if it has no nested jars, so that a file which the index has
+		 * seen with the same size and last-modified time isn't opened at all.
+		 */
+		@Override
+		Map<String, List<URL>> nestedJarsByParent(ExtractionIndex index) {
+			var byParent = new LinkedHashMap<String, List<URL>>();
+			for (File file : files) {
+				var nestedJars = index.nestedUrls(file);
+				byParent.put(jarUrl(file), nestedJars != null ? nestedJars : nestedJarsOf(file));
+			}
+			return byParent;
+		}
+
+		private static List<URL> nestedJarsOf(File file) {
+			List<URL> nestedJars = new ArrayList<>();
+			try (var jarFile = new JarFile(file)) {
+				var zipEntry = jarFile.getEntry(SolsticeManifest.MANIFEST_PATH);
+				if (zipEntry != null) {
+					try (var input = jarFile.getInputStream(zipEntry)) {
+						addNestedJarsFromManifest(nestedJars, jarUrl(file), input);
 					}
 				}
-				return nestedJars;
+			} catch (IOException e) {
+				throw Unchecked.wrap(e);
 			}
-		};
+			return nestedJars;
+		}
+
+		private static String jarUrl(File file) {
+			return "jar:" + file.toURI() + "!";
+		}
 	}
 
 	protected abstract List<URL> listNestedJars();
 
+	/** Groups {@link #listNestedJars()} by the url of the parent jar which contains them. */
+	Map<String, List<URL>> nestedJarsByParent(ExtractionIndex index) {
+		var byParent = new LinkedHashMap<String, List<URL>>();
+		for (var url : listNestedJars()) {
+			var externalForm = url.toExternalForm();
+			var parentJarUrl = externalForm.substring(0, externalForm.lastIndexOf('!') + 1);
+			byParent.computeIfAbsent(parentJarUrl, unused -> new ArrayList<>()).add(url);
+		}
+		return byParent;
+	}
+
 	/** Extracts nested jars into {@link dev.equo.solstice.p2.CacheLocations#p2nestedJars()}. */
 	public List<Map.Entry<URL, File>> extractAllNestedJars() {
 		return extractAllNestedJars(CacheLocations.p2nestedJars());
 	}
 
+	/**
+	 * Extracts the nested jars of each parent jar in parallel. A parent jar whose size and
+	 * last-modified time match the {@link ExtractionIndex} in the folder isn't opened at all.
+	 */
 	public List<Map.Entry<URL, File>> extractAllNestedJars(File nestedJarFolder) {
-		var files = new ArrayList<Map.Entry<URL, File>>();
-		for (var url : listNestedJars()) {
+		var index = ExtractionIndex.load(new File(nestedJarFolder, ExtractionIndex.FILENAME));
+		var byParent = nestedJarsByParent(index);
+		List<Map.Entry<URL, File>> files =
+				new ArrayList<>(byParent.entrySet())
+						.parallelStream()
+						.flatMap(
+								parent ->
+										extractFromParent(parent.getKey(), parent.getValue(), nestedJarFolder, index)
+												.stream())
+						.collect(Collectors.toCollection(ArrayList::new));
+		index.save();
+		files.sort(Comparator.comparing(e -> e.getKey().getPath()));
+		return files;
+	}
+
+	private static List<Map.Entry<URL, File>> extractFromParent(
+			String parentJarUrl, List<URL> nestedUrls, File nestedJarFolder, ExtractionIndex index) {
+		var parentJar = FileMisc.jarFile(parentJarUrl);
+		var cached = parentJar == null ? null : index.get(parentJar, nestedUrls);
+		if (cached != null) {
+			var files = new ArrayList<Map.Entry<URL, File>>(cached.size());
+			for (var entry : cached.entrySet()) {
+				if (entry.getValue() == null) {
+					LoggerFactory.getLogger(NestedJars.class)
+							.warn("Missing nested jar: " + entry.getKey().getPath());
+				} else {
+					files.add(Map.entry(entry.getKey(), entry.getValue()));
+				}
+			}
+			return files;
+		}
+		// the size and time are taken before reading, so a parent which changes meanwhile is redone
+		long size = parentJar == null ? 0 : parentJar.length();
+		long lastModified = parentJar == null ? 0 : parentJar.lastModified();
+		var extracted = new LinkedHashMap<URL, File>();
+		for (var url : nestedUrls) {
 			int lastExclamation = url.getPath().indexOf('!');
 			int slashBeforeThat = url.getPath().lastIndexOf('/', lastExclamation);
 			try {
-				files.add(
+				var file =
 						extractNestedJar(
 								url.getPath().substring(slashBeforeThat + 1, lastExclamation),
 								url,
-								nestedJarFolder));
+								nestedJarFolder);
+				extracted.put(url, file);
 			} catch (FileNotFoundException e) {
 				LoggerFactory.getLogger(NestedJars.class).warn("Missing nested jar: " + url.getPath());
+				extracted.put(url, null);
 			} catch (IOException e) {
 				throw new RuntimeException(e);
 			}
 		}
-		files.sort(Comparator.comparing(e -> e.getKey().getPath()));
+		if (parentJar != null) {
+			index.put(parentJar, size, lastModified, extracted);
+		}
+		var files = new ArrayList<Map.Entry<URL, File>>(extracted.size());
+		for (var entry : extracted.entrySet()) {
+			if (entry.getValue() != null) {
+				files.add(Map.entry(entry.getKey(), entry.getValue()));
+			}
+		}
 		return files;
 	}
 
@@ -310,24 +418,34 @@ public abstract class NestedJars {
 		warnOnly = true;
 	}
 
-	private static Map.Entry<URL, File> extractNestedJar(
-			String parentJar, URL entry, File nestedJarFolder) throws IOException {
-		try (var toRead = entry.openStream()) {
-			var content = toRead.readAllBytes();
-
+	/**
+	 * Streams the nested jar into a temp file while hashing it, then renames it to its final name,
+	 * so that a jar in the folder is always complete even if another process is extracting it too.
+	 */
+	private static File extractNestedJar(String parentJar, URL entry, File nestedJarFolder)
+			throws IOException {
+		try (var toRead = new DigestInputStream(entry.openStream(), md5())) {
 			var jarPath = entry.getPath();
 			var lastSep = Math.max(jarPath.lastIndexOf('!'), jarPath.lastIndexOf('/'));
 			var jarSimpleName = jarPath.substring(lastSep + 1);
 
-			var filename = parentJar + "__" + jarSimpleName + "__" + filenameSafeHash(content) + ".jar";
-			var jarToAdd = new File(nestedJarFolder, filename);
-			if (!jarToAdd.exists() || jarToAdd.length() != content.length) {
-				nestedJarFolder.mkdirs();
-				try (var output = new FileOutputStream(jarToAdd)) {
-					output.write(content);
+			Files.createDirectories(nestedJarFolder.toPath());
+			var tempFile = FileMisc.tempFileFor(new File(nestedJarFolder, jarSimpleName));
+			try {
+				long length;
+				try (var output = Files.newOutputStream(tempFile, StandardOpenOption.CREATE_NEW)) {
+					length = toRead.transferTo(output);
+				}
+				var hash = filenameSafe(toRead.getMessageDigest().digest());
+				var filename = parentJar + "__" + jarSimpleName + "__" + hash + ".jar";
+				var jarToAdd = new File(nestedJarFolder, filename);
+				if (!jarToAdd.exists() || jarToAdd.length() != length) {
+					FileMisc.moveAtomically(tempFile, jarToAdd.toPath());
 				}
+				return jarToAdd;
+			} finally {
+				Files.deleteIfExists(tempFile);
 			}
-			return Map.entry(entry, jarToAdd);
 		}
 	}
 
@@ -336,14 +454,189 @@ public abstract class NestedJars {
 	}
 
 	static String filenameSafeHash(byte[] content) {
+		MessageDigest md5 = md5();
+		md5.update(content);
+		return filenameSafe(md5.digest());
+	}
+
+	private static MessageDigest md5() {
 		try {
-			MessageDigest md5 = MessageDigest.getInstance("MD5");
-			md5.update(content);
-			String encoded =
-					new String(Base64.getEncoder().encode(md5.digest()), StandardCharsets.US_ASCII);
-			return encoded.replace('/', '-').replace('=', '-');
+			return MessageDigest.getInstance("MD5");
 		} catch (NoSuchAlgorithmException e) {
 			throw Unchecked.wrap(e);
 		}
 	}
+
+	private static String filenameSafe(byte[] digest) {
+		String encoded = new String(Base64.getEncoder().encode(digest), StandardCharsets.US_ASCII);
+		return encoded.replace('/', '-').replace('=', '-');
+	}
+
+	/**
+	 * Records which jars were extracted from each parent jar, keyed by the parent's path and
+	 * validated by its size and last-modified time.
+	 */
+	static class ExtractionIndex {
+		static final String FILENAME = "extracted-index";
+
+		private static final String FORMAT = "nested-jars";
+		private static final String PARENTS = "parents";
+		private static final String NESTED = "nested";
+
+		private final File file;
+		private final ConcurrentHashMap<String, Parent> parents = new ConcurrentHashMap<>();
+		private volatile boolean changed;
+
+		private ExtractionIndex(File file) {
+			this.file = file;
+		}
+
+		/** Loads the index at the given file, or starts an empty one if it is missing or unreadable. */
+		static ExtractionIndex load(File file) {
+			var index = new ExtractionIndex(file);
+			var parents = FileMisc.readOrNull(file, ExtractionIndex::read);
+			if (parents != null) {
+				index.parents.putAll(parents);
+			}
+			return index;
+		}
+
+		private static Map<String, Parent> read(File file) {
+			var sections = SerializableMisc.linesFromFile(FORMAT, file);
+			if (sections == null) {
+				return Map.of();
+			}
+			var parents = new LinkedHashMap<String, Parent>();
+			var nested = sections.get(NESTED).iterator();
+			for (var line : sections.get(PARENTS)) {
+				// <size> <lastModified> <nestedCount> <path>
+				var parts = line.split(" ", 4);
+				int count = Integer.parseInt(parts[2]);
+				var extracted = new LinkedHashMap<String, String>(count * 4 / 3 + 1);
+				for (int i = 0; i < count; ++i) {
+					// <url> <filename>, or only <url> if the nested jar was missing
+					var nestedLine = nested.next();
+					int space = nestedLine.indexOf(' ');
+					if (space == -1) {
+						extracted.put(nestedLine, null);
+					} else {
+						extracted.put(nestedLine.substring(0, space), nestedLine.substring(space + 1));
+					}
+				}
+				parents.put(
+						parts[3], new Parent(Long.parseLong(parts[0]), Long.parseLong(parts[1]), extracted));
+			}
+			return parents;
+		}
+
+		/** Returns the parent's entry if its size and last-modified time haven't changed. */
+		private @Nullable Parent unchanged(File parentJar) {
+			var parent = parents.get(parentJar.getAbsolutePath());
+			if (parent == null
+					|| parent.size != parentJar.length()
+					|| parent.lastModified != parentJar.lastModified()) {
+				return null;
+			}
+			return parent;
+		}
+
+		/** Returns the nested urls which were recorded for the parent, or null if it has changed. */
+		@Nullable
+		List<URL> nestedUrls(File parentJar) {
+			var parent = unchanged(parentJar);
+			if (parent == null) {
+				return null;
+			}
+			var urls = new ArrayList<URL>(parent.extracted.size());
+			for (var externalForm : parent.extracted.keySet()) {
+				urls.add(Unchecked.get(() -> new URL(externalForm)));
+			}
+			return urls;
+		}
+
+		/**
+		 * Returns the jars which were extracted for exactly these nested urls, with null for the ones
+		 * which were missing, or null if the parent has changed or any extracted jar is gone.
+		 */
+		@Nullable
+		Map<URL, File> get(File parentJar, List<URL> nestedUrls) {
+			var parent = unchanged(parentJar);
+			if (parent == null || parent.extracted.size() != nestedUrls.size()) {
+				return null;
+			}
+			var result = new LinkedHashMap<URL, File>(nestedUrls.size() * 4 / 3 + 1);
+			for (var url : nestedUrls) {
+				var externalForm = url.toExternalForm();
+				if (!parent.extracted.containsKey(externalForm)) {
+					return null;
+				}
+				var filename = parent.extracted.get(externalForm);
+				File extracted = null;
+				if (filename != null) {
+					extracted = new File(file.getParentFile(), filename);
+					if (!extracted.isFile()) {
+						return null;
+					}
+				}
+				result.put(url, extracted);
+			}
+			return result;
+		}
+
+		void put(File parentJar, long size, long lastModified, Map<URL, File> extracted) {
+			var filenames = new LinkedHashMap<String, String>(extracted.size() * 4 / 3 + 1);
+			for (var entry : extracted.entrySet()) {
+				var file = entry.getValue();
+				filenames.put(entry.getKey().toExternalForm(), file == null ? null : file.getName());
+			}
+			parents.put(parentJar.getAbsolutePath(), new Parent(size, lastModified, filenames));
+			changed = true;
+		}
+
+		/** Writes the index if anything changed, dropping the parents which no longer exist. */
+		void save() {
+			if (parents.keySet().removeIf(path -> !new File(path).isFile())) {
+				changed = true;
+			}
+			if (!changed) {
+				return;
+			}
+			var parentLines = new ArrayList<String>();
+			var nestedLines = new ArrayList<String>();
+			for (var entry : parents.entrySet()) {
+				var parent = entry.getValue();
+				parentLines.add(
+						parent.size
+								+ " "
+								+ parent.lastModified
+								+ " "
+								+ parent.extracted.size()
+								+ " "
+								+ entry.getKey());
+				for (var nested : parent.extracted.entrySet()) {
+					nestedLines.add(
+							nested.getValue() == null
+									? nested.getKey()
+									: nested.getKey() + " " + nested.getValue());
+				}
+			}
+			var sections = new LinkedHashMap<String, List<String>>();
+			sections.put(PARENTS, parentLines);
+			sections.put(NESTED, nestedLines);
+			FileMisc.writeAtomically(
+					file, tempFile -> SerializableMisc.linesToFile(FORMAT, sections, tempFile));
+			changed = false;
+		}
+
+		private static class Parent {
+			final long size, lastModified;
+			final Map<String, String> extracted;
+
+			Parent(long size, long lastModified, Map<String, String> extracted) {
+				this.size = size;
+				this.lastModified = lastModified;
+				this.extracted = extracted;
+			}
+		}
+	}
 }
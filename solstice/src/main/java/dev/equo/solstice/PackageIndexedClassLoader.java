@@ -0,0 +1,498 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+/**
+ * A system classloader which indexes every directory of every jar on the classpath, so that a class
+ * or resource lookup only probes the jars which have its directory, rather than every jar in turn.
+ * When several jars have the same package, they are probed in classpath order, same as the JDK.
+ *
+ * <p>With {@link #NESTED_JARS_IN_PLACE}, it also serves the jars in each {@code Bundle-ClassPath}
+ * straight from their parent jar, so that they don't need to be extracted.
+ *
+ * <p>Install it with {@code
+ * -Djava.system.class.loader=dev.equo.solstice.PackageIndexedClassLoader}. It must not reference
+ * any class from the classpath besides {@link ZipCentralDirectory}, because it is itself loaded by
+ * the JDK's application classloader, and any class it touched would be loaded twice.
+ */
+public class PackageIndexedClassLoader extends ClassLoader {
+	static {
+		registerAsParallelCapable();
+	}
+
+	/** A jar or directory on the classpath, or a jar nested inside one. */
+	private abstract static class Source {
+		final URL url;
+		final ProtectionDomain domain;
+
+		Source(URL url, ClassLoader loader) {
+			this.url = url;
+			this.domain =
+					new ProtectionDomain(new CodeSource(url, (Certificate[]) null), null, loader, null);
+		}
+
+		abstract boolean has(String name);
+
+		abstract URL urlOf(String name) throws MalformedURLException;
+
+		abstract byte[] read(String name) throws IOException;
+
+		abstract Manifest manifest() throws IOException;
+	}
+
+	private static class JarSource extends Source {
+		final JarFile jar;
+
+		JarSource(File file, ClassLoader loader) throws IOException {
+			super(file.toURI().toURL(), loader);
+			this.jar = new JarFile(file, true, ZipFile.OPEN_READ, JarFile.runtimeVersion());
+		}
+
+		@Override
+		boolean has(String name) {
+			return jar.getEntry(name) != null;
+		}
+
+		@Override
+		URL urlOf(String name) throws MalformedURLException {
+			return new URL("jar:" + url + "!/" + encode(name));
+		}
+
+		@Override
+		byte[] read(String name) throws IOException {
+			try (InputStream input = jar.getInputStream(jar.getEntry(name))) {
+				return input.readAllBytes();
+			}
+		}
+
+		@Override
+		Manifest manifest() throws IOException {
+			return jar.getManifest();
+		}
+	}
+
+	private static class DirSource extends Source {
+		final File dir;
+
+		DirSource(File dir, ClassLoader loader) throws MalformedURLException {
+			super(dir.toURI().toURL(), loader);
+			this.dir = dir;
+		}
+
+		@Override
+		boolean has(String name) {
+			return new File(dir, name).exists();
+		}
+
+		@Override
+		URL urlOf(String name) throws MalformedURLException {
+			return new URL(url, encode(name));
+		}
+
+		@Override
+		byte[] read(String name) throws IOException {
+			return Files.readAllBytes(new File(dir, name).toPath());
+		}
+
+		@Override
+		Manifest manifest() {
+			return null;
+		}
+	}
+
+	/**
+	 * A jar from the {@code Bundle-ClassPath} of a jar on the classpath, read in place rather than
+	 * extracted. Its classes have the code source of the jar which contains it, since they belong to
+	 * that bundle. Its manifest is hidden, so that it isn't mistaken for a bundle of its own.
+	 */
+	private static class NestedSource extends Source {
+		final String prefix;
+		final ZipCentralDirectory zip;
+		final URLStreamHandler handler;
+
+		NestedSource(JarSource parent, String path, ZipCentralDirectory zip, ClassLoader loader) {
+			super(parent.url, loader);
+			this.prefix = "jar:" + parent.url + "!/" + path + "!/";
+			this.zip = zip;
+			this.handler =
+					new URLStreamHandler() {
+						@Override
+						protected URLConnection openConnection(URL u) throws IOException {
+							var name = u.toString().substring(prefix.length());
+							var content = read(decode(name));
+							return new URLConnection(u) {
+								@Override
+								public void connect() {}
+
+								@Override
+								public InputStream getInputStream() {
+									return new ByteArrayInputStream(content);
+								}
+
+								@Override
+								public long getContentLengthLong() {
+									return content.length;
+								}
+							};
+						}
+					};
+		}
+
+		@Override
+		boolean has(String name) {
+			return !JarFile.MANIFEST_NAME.equals(name) && zip.entries.containsKey(name);
+		}
+
+		@Override
+		URL urlOf(String name) throws MalformedURLException {
+			return new URL(null, prefix + encode(name), handler);
+		}
+
+		@Override
+		byte[] read(String name) throws IOException {
+			var entry = zip.entries.get(name);
+			if (entry == null) {
+				throw new FileNotFoundException(prefix + name);
+			}
+			var content = zip.content(entry);
+			var bytes = new byte[content.remaining()];
+			content.get(bytes);
+			return bytes;
+		}
+
+		@Override
+		Manifest manifest() throws IOException {
+			if (!zip.entries.containsKey(JarFile.MANIFEST_NAME)) {
+				return null;
+			}
+			return new Manifest(new ByteArrayInputStream(read(JarFile.MANIFEST_NAME)));
+		}
+	}
+
+	/** Only changed within {@code synchronized} methods. */
+	private final List<Source> sources = new ArrayList<>();
+
+	/**
+	 * From a directory within a jar, e.g. {@code org/eclipse/core/runtime/}, to its sources. Each
+	 * list is immutable and replaced whenever a source is added, so lookups don't need any lock.
+	 */
+	private final ConcurrentHashMap<String, List<Source>> sourcesByDir = new ConcurrentHashMap<>();
+
+	/**
+	 * System property which makes the jars in the {@code Bundle-ClassPath} of each jar on the
+	 * classpath load in place, after every jar on the classpath, rather than being extracted.
+	 */
+	public static final String NESTED_JARS_IN_PLACE = "solstice.nestedJarsInPlace";
+
+	/** Called by the JDK when this is the {@code java.system.class.loader}. */
+	public PackageIndexedClassLoader(ClassLoader parent) {
+		this(classpath(), Boolean.getBoolean(NESTED_JARS_IN_PLACE));
+	}
+
+	PackageIndexedClassLoader(List<File> classpath, boolean nestedJarsInPlace) {
+		// skip the application classloader, since it has the same classpath without the index
+		super("solstice", ClassLoader.getPlatformClassLoader());
+		for (var file : classpath) {
+			add(file);
+		}
+		if (nestedJarsInPlace) {
+			// same order as extracted nested jars, which go after the rest of the classpath
+			for (var source : new ArrayList<>(sources)) {
+				if (source instanceof JarSource) {
+					addNested((JarSource) source);
+				}
+			}
+		}
+	}
+
+	/** Every entry of {@code java.class.path}, with the {@code Class-Path} of each jar expanded. */
+	private static List<File> classpath() {
+		var result = new LinkedHashSet<File>();
+		for (var path : System.getProperty("java.class.path").split(File.pathSeparator)) {
+			if (!path.isEmpty()) {
+				addWithManifestClasspath(new File(path).getAbsoluteFile(), result);
+			}
+		}
+		return new ArrayList<>(result);
+	}
+
+	private static void addWithManifestClasspath(File file, Set<File> result) {
+		if (!result.add(file) || !file.isFile()) {
+			return;
+		}
+		try (var jar = new JarFile(file)) {
+			var manifest = jar.getManifest();
+			if (manifest == null) {
+				return;
+			}
+			var classPath = manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+			if (classPath == null) {
+				return;
+			}
+			var base = file.toURI();
+			for (var entry : classPath.trim().split("\\s+")) {
+				var resolved = base.resolve(entry);
+				if ("file".equals(resolved.getScheme())) {
+					addWithManifestClasspath(new File(resolved), result);
+				}
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			// the JDK silently ignores classpath entries it can't read, and so do we
+		}
+	}
+
+	private synchronized void add(File file) {
+		try {
+			Source source;
+			Stream<String> names;
+			if (file.isDirectory()) {
+				source = new DirSource(file, this);
+				var root = file.toPath();
+				names = Files.walk(root).skip(1).map(path -> relativeName(root, path));
+			} else if (file.isFile()) {
+				var jarSource = new JarSource(file, this);
+				source = jarSource;
+				names = jarSource.jar.stream().map(entry -> entry.getName());
+			} else {
+				return;
+			}
+			try (names) {
+				index(source, names);
+			}
+		} catch (IOException | UncheckedIOException e) {
+			// the JDK silently ignores classpath entries it can't read, and so do we
+		}
+	}
+
+	/** Must be called from a {@code synchronized} method, so that only one thread adds at a time. */
+	private void index(Source source, Stream<String> names) {
+		var dirs = new HashSet<String>();
+		names.forEach(name -> dirs.add(dirOf(unversioned(name))));
+		sources.add(source);
+		for (var dir : dirs) {
+			sourcesByDir.compute(
+					dir,
+					(unused, existing) -> {
+						if (existing == null) {
+							return List.of(source);
+						}
+						var added = new ArrayList<Source>(existing.size() + 1);
+						added.addAll(existing);
+						added.add(source);
+						return Collections.unmodifiableList(added);
+					});
+		}
+	}
+
+	private static final Attributes.Name BUNDLE_CLASSPATH = new Attributes.Name("Bundle-ClassPath");
+
+	/**
+	 * Indexes each jar in the {@code Bundle-ClassPath} of the given jar. A nested jar which is stored
+	 * is read straight out of the memory-mapped parent, and one which is compressed is inflated into
+	 * memory once.
+	 */
+	private synchronized void addNested(JarSource parent) {
+		try {
+			var manifest = parent.jar.getManifest();
+			var bundleClassPath =
+					manifest == null ? null : manifest.getMainAttributes().getValue(BUNDLE_CLASSPATH);
+			if (bundleClassPath == null) {
+				return;
+			}
+			ZipCentralDirectory parentZip = null;
+			for (var raw : bundleClassPath.split(",")) {
+				var path = raw.trim();
+				int semicolon = path.indexOf(';');
+				if (semicolon != -1) {
+					path = path.substring(0, semicolon).trim();
+				}
+				if (path.equals(".") || path.startsWith("../") || !path.endsWith(".jar")) {
+					continue;
+				}
+				if (parentZip == null) {
+					parentZip = new ZipCentralDirectory(map(parent.url));
+				}
+				var entry = parentZip.entries.get(path);
+				if (entry == null) {
+					continue;
+				}
+				var nestedZip = new ZipCentralDirectory(parentZip.content(entry));
+				index(new NestedSource(parent, path, nestedZip, this), nestedZip.entries.keySet().stream());
+			}
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Unable to read nested jars in place from " + parent.url + ": " + e);
+		}
+	}
+
+	private static ByteBuffer map(URL fileUrl) throws IOException {
+		try (var channel = FileChannel.open(Path.of(URI.create(fileUrl.toString())))) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	private static String relativeName(Path root, Path path) {
+		var name = root.relativize(path).toString().replace(File.separatorChar, '/');
+		return Files.isDirectory(path) ? name + "/" : name;
+	}
+
+	private static final String VERSIONS = "META-INF/versions/";
+
+	/** A multi-release entry is also indexed under the directory it overrides. */
+	private static String unversioned(String name) {
+		if (name.startsWith(VERSIONS)) {
+			int slash = name.indexOf('/', VERSIONS.length());
+			if (slash != -1) {
+				return name.substring(slash + 1);
+			}
+		}
+		return name;
+	}
+
+	/** The directory of the given entry, including its trailing slash, or empty for the root. */
+	private static String dirOf(String name) {
+		int lastSlash = name.lastIndexOf('/', name.length() - 2);
+		return lastSlash == -1 ? "" : name.substring(0, lastSlash + 1);
+	}
+
+	private List<Source> sourcesFor(String name) {
+		return sourcesByDir.getOrDefault(dirOf(name), Collections.emptyList());
+	}
+
+	/** Called by the JDK to add a java agent's jar when this is the system classloader. */
+	void appendToClassPathForInstrumentation(String path) {
+		add(new File(path).getAbsoluteFile());
+	}
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		var path = name.replace('.', '/') + ".class";
+		for (var source : sourcesFor(path)) {
+			if (source.has(path)) {
+				try {
+					definePackageIfAbsent(name, source);
+					byte[] bytes = source.read(path);
+					return defineClass(name, bytes, 0, bytes.length, source.domain);
+				} catch (IOException e) {
+					throw new ClassNotFoundException(name, e);
+				}
+			}
+		}
+		throw new ClassNotFoundException(name);
+	}
+
+	private void definePackageIfAbsent(String className, Source source) throws IOException {
+		int lastDot = className.lastIndexOf('.');
+		if (lastDot == -1) {
+			return;
+		}
+		var packageName = className.substring(0, lastDot);
+		if (getDefinedPackage(packageName) != null) {
+			return;
+		}
+		try {
+			var manifest = source.manifest();
+			var attributes = manifest == null ? new Attributes() : manifest.getMainAttributes();
+			definePackage(
+					packageName,
+					attributes.getValue(Attributes.Name.SPECIFICATION_TITLE),
+					attributes.getValue(Attributes.Name.SPECIFICATION_VERSION),
+					attributes.getValue(Attributes.Name.SPECIFICATION_VENDOR),
+					attributes.getValue(Attributes.Name.IMPLEMENTATION_TITLE),
+					attributes.getValue(Attributes.Name.IMPLEMENTATION_VERSION),
+					attributes.getValue(Attributes.Name.IMPLEMENTATION_VENDOR),
+					null);
+		} catch (IllegalArgumentException e) {
+			// another thread defined it first
+		}
+	}
+
+	@Override
+	protected URL findResource(String name) {
+		for (var source : sourcesFor(name)) {
+			if (source.has(name)) {
+				return urlOf(source, name);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	protected Enumeration<URL> findResources(String name) {
+		var urls = new ArrayList<URL>();
+		for (var source : sourcesFor(name)) {
+			if (source.has(name)) {
+				urls.add(urlOf(source, name));
+			}
+		}
+		return Collections.enumeration(urls);
+	}
+
+	private static URL urlOf(Source source, String name) {
+		try {
+			return source.urlOf(name);
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	/** Percent-encodes an entry name for use in a URL, same as the JDK's own classpath. */
+	private static String encode(String name) {
+		try {
+			return new URI(null, null, name, null).getRawPath();
+		} catch (Exception e) {
+			return name;
+		}
+	}
+
+	/** Inverse of {@link #encode}, which unlike URLDecoder leaves {@code +} as it is. */
+	private static String decode(String raw) {
+		try {
+			return new URI("/" + raw).getPath().substring(1);
+		} catch (Exception e) {
+			return raw;
+		}
+	}
+}
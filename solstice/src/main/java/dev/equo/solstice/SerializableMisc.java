@@ -13,21 +13,39 @@
  *******************************************************************************/
 package dev.equo.solstice;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
 
+/**
+ * Persists objects to files. Plain data (lists of strings and paths) uses a small versioned line
+ * format, which is fast to read and doesn't depend on the classes which wrote it. Everything else
+ * uses Java serialization. The line readers fall back to Java serialization for files which were
+ * written before the line format existed.
+ */
 public class SerializableMisc {
 	public static void toFile(Serializable obj, File file) {
 		try {
 			java.nio.file.Files.createDirectories(file.getParentFile().toPath());
-			try (OutputStream fileStream = new FileOutputStream(file);
+			try (OutputStream fileStream = new BufferedOutputStream(new FileOutputStream(file));
 					ObjectOutputStream objectStream = new ObjectOutputStream(fileStream)) {
 				objectStream.writeObject(obj);
 			}
@@ -38,7 +56,7 @@ public class SerializableMisc {
 
 	@SuppressWarnings("unchecked")
 	public static <T> T fromFile(Class<T> clazz, File file) {
-		try (InputStream fileStream = new FileInputStream(file);
+		try (InputStream fileStream = new BufferedInputStream(new FileInputStream(file));
 				ObjectInputStream objectStream = new ObjectInputStream(fileStream)) {
 			Object obj = objectStream.readObject();
 			if (clazz.isInstance(obj)) {
@@ -50,4 +68,131 @@ public class SerializableMisc {
 			throw Unchecked.wrap(e);
 		}
 	}
+
+	/** Writes a list of files as their paths, one per line. */
+	public static void pathsToFile(List<File> files, File file) {
+		var paths = new ArrayList<String>(files.size());
+		for (var f : files) {
+			paths.add(f.getPath());
+		}
+		linesToFile(PATHS, Map.of(PATHS, paths), file);
+	}
+
+	/**
+	 * Reads a list of files written by {@link #pathsToFile}, or a Java-serialized {@code
+	 * ArrayList<File>} written by an older version.
+	 */
+	@SuppressWarnings("unchecked")
+	public static ArrayList<File> pathsFromFile(File file) {
+		var sections = linesFromFile(PATHS, file);
+		if (sections == null) {
+			return fromFile(ArrayList.class, file);
+		}
+		var paths = sections.get(PATHS);
+		var files = new ArrayList<File>(paths.size());
+		for (var path : paths) {
+			files.add(new File(path));
+		}
+		return files;
+	}
+
+	private static final String PATHS = "paths";
+
+	/** The first token of every file in the line format, can't be the start of a Java stream. */
+	private static final String MAGIC = "solstice";
+	private static final int LINES_VERSION = 1;
+
+	/**
+	 * Writes named sections of strings in a line format. The first line is {@code solstice <format>
+	 * <version>}, then each section is a {@code <name> <count>} line followed by that many lines.
+	 * Backslashes and line breaks within a value are escaped.
+	 */
+	public static void linesToFile(String format, Map<String, List<String>> sections, File file) {
+		try {
+			java.nio.file.Files.createDirectories(file.getParentFile().toPath());
+			try (Writer writer =
+					new OutputStreamWriter(
+							new BufferedOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8)) {
+				writer.write(MAGIC + " " + format + " " + LINES_VERSION + "\n");
+				for (var section : sections.entrySet()) {
+					writer.write(section.getKey() + " " + section.getValue().size() + "\n");
+					for (var value : section.getValue()) {
+						writer.write(escape(value));
+						writer.write('\n');
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw Unchecked.wrap(e);
+		}
+	}
+
+	/**
+	 * Reads the sections written by {@link #linesToFile}, in the order they were written. Returns
+	 * null if the file is not in the line format, so that the caller can fall back to {@link
+	 * #fromFile}.
+	 */
+	public static @Nullable Map<String, List<String>> linesFromFile(String format, File file) {
+		try (InputStream raw = new BufferedInputStream(new FileInputStream(file))) {
+			raw.mark(MAGIC.length());
+			var start = raw.readNBytes(MAGIC.length());
+			if (!MAGIC.equals(new String(start, StandardCharsets.UTF_8))) {
+				return null;
+			}
+			raw.reset();
+			var reader = new BufferedReader(new InputStreamReader(raw, StandardCharsets.UTF_8));
+			var header = reader.readLine().split(" ");
+			if (header.length != 3 || !header[1].equals(format)) {
+				throw new IllegalArgumentException(
+						"Expected " + MAGIC + " " + format + " but was " + String.join(" ", header));
+			}
+			int version = Integer.parseInt(header[2]);
+			if (version > LINES_VERSION) {
+				throw new IllegalArgumentException(
+						file + " was written by a newer version (" + version + "), please upgrade");
+			}
+			var sections = new LinkedHashMap<String, List<String>>();
+			String sectionHeader;
+			while ((sectionHeader = reader.readLine()) != null) {
+				int space = sectionHeader.lastIndexOf(' ');
+				int count = Integer.parseInt(sectionHeader.substring(space + 1));
+				var values = new ArrayList<String>(count);
+				for (int i = 0; i < count; ++i) {
+					var line = reader.readLine();
+					if (line == null) {
+						throw new IllegalArgumentException(file + " is truncated");
+					}
+					values.add(unescape(line));
+				}
+				sections.put(sectionHeader.substring(0, space), values);
+			}
+			return sections;
+		} catch (IOException e) {
+			throw Unchecked.wrap(e);
+		}
+	}
+
+	private static String escape(String value) {
+		if (value.indexOf('\\') == -1 && value.indexOf('\n') == -1 && value.indexOf('\r') == -1) {
+			return value;
+		}
+		return value.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	private static String unescape(String line) {
+		if (line.indexOf('\\') == -1) {
+			return line;
+		}
+		var buf = new StringBuilder(line.length());
+		for (int i = 0; i < line.length(); ++i) {
+			char c = line.charAt(i);
+			if (c == '\\' && i + 1 < line.length()) {
+				char next = line.charAt(++i);
+				buf.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+			} else {
+				buf.append(c);
+			}
+		}
+		return buf.toString();
+	}
 }
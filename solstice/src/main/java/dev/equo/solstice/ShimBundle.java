@@ -140,21 +140,34 @@ public class ShimBundle implements Bundle {
 	///////////////////
 	// Bundle overrides
 	///////////////////
-	int state;
+	volatile int state;
 
-	private boolean activateHasBeenCalled = false;
+	/** True if the activator of this bundle or one of its fragments threw. */
+	volatile boolean activatorFailed;
+
+	/** Bundles may be activated from several threads, see Solstice.startAllWithLazyInParallel. */
+	private final ActivationLatch activation = new ActivationLatch();
 
 	private void activate() {
-		if (activateHasBeenCalled) {
+		if (!activation.begin()) {
 			return;
 		}
-		activateHasBeenCalled = true;
+		try {
+			activateOnce();
+		} finally {
+			activation.finish();
+		}
+	}
+
+	private void activateOnce() {
 		if (state != Bundle.RESOLVED) {
 			state = Bundle.RESOLVED;
 			context.delegate.notifyBundleListeners(BundleEvent.RESOLVED, this);
 		}
-		for (var cap : manifest.capProvides) {
-			context.delegate.capabilities.put(cap, this);
+		synchronized (context.delegate.capabilities) {
+			for (var cap : manifest.capProvides) {
+				context.delegate.capabilities.put(cap, this);
+			}
 		}
 		state = Bundle.STARTING;
 		context.delegate.notifyBundleListeners(BundleEvent.STARTING, this);
@@ -165,6 +178,7 @@ public class ShimBundle implements Bundle {
 				context.activator = c.newInstance();
 				context.activator.start(context);
 			} catch (Exception e) {
+				activatorFailed = true;
 				context.delegate.logger.warn("Error in activator of " + getSymbolicName(), e);
 			}
 			for (var fragment : manifest.fragments) {
@@ -178,6 +192,7 @@ public class ShimBundle implements Bundle {
 						c.newInstance().start(context);
 					}
 				} catch (Exception e) {
+					activatorFailed = true;
 					context.delegate.logger.warn(
 							"Error in fragment activator of " + fragment.getSymbolicName(), e);
 				}
@@ -14,17 +14,26 @@
 package dev.equo.solstice;
 
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
@@ -42,35 +51,52 @@ public class Solstice {
 				"org.eclipse.equinox.p2.reconciler.dropins", List.of("org.eclipse.equinox.p2.updatesite"));
 	}
 
-	/** Creates a Solstice instance by finding all available bundles on the classpath. */
+	/**
+	 * Creates a Solstice instance by finding all available bundles on the classpath. The manifests
+	 * are parsed in parallel, but they keep their classpath order.
+	 */
 	public static Solstice findBundlesOnClasspath() {
-		Enumeration<URL> manifestURLs =
-				Unchecked.get(
-						() ->
-								SolsticeManifest.class
-										.getClassLoader()
-										.getResources(SolsticeManifest.MANIFEST_PATH));
+		return findBundlesOnClasspath(ManifestIndex.none());
+	}
 
-		int classpathOrder = 0;
-		List<SolsticeManifest> manifests = new ArrayList<>();
-		while (manifestURLs.hasMoreElements()) {
-			var manifest = new SolsticeManifest(manifestURLs.nextElement(), ++classpathOrder);
-			if (manifest.getSymbolicName() != null) {
-				manifests.add(manifest);
-			}
-		}
+	/**
+	 * Creates a Solstice instance by finding all available bundles on the classpath, reusing the
+	 * manifests in the given index for any jar which hasn't changed, and saving the newly parsed
+	 * ones.
+	 */
+	public static Solstice findBundlesOnClasspath(ManifestIndex index) {
+		List<URL> manifestURLs =
+				Collections.list(
+						Unchecked.get(
+								() ->
+										SolsticeManifest.class
+												.getClassLoader()
+												.getResources(SolsticeManifest.MANIFEST_PATH)));
+		List<SolsticeManifest> manifests =
+				IntStream.range(0, manifestURLs.size())
+						.parallel()
+						.mapToObj(i -> index.parse(manifestURLs.get(i), i + 1))
+						.filter(manifest -> manifest.getSymbolicName() != null)
+						.collect(Collectors.toList());
+		index.save();
 		return new Solstice(manifests);
 	}
 
 	private final Logger logger = LoggerFactory.getLogger(Solstice.class);
 	private final List<SolsticeManifest> bundles;
 
-	private final TreeSet<String> pkgs = new TreeSet<>();
+	private final HashSet<String> pkgs = new HashSet<>();
 	private final Capability.SupersetSet caps = new Capability.SupersetSet();
 	private BundleContext context;
 
-	private Solstice(List<SolsticeManifest> bundles) {
+	Solstice(List<SolsticeManifest> bundles) {
 		this.bundles = bundles;
+		for (var bundle : bundles) {
+			bySymbolicNameIndex
+					.computeIfAbsent(bundle.getSymbolicName(), unused -> new ArrayList<>(1))
+					.add(bundle);
+			byJarUrlIndex.putIfAbsent(bundle.getJarUrl(), bundle);
+		}
 		for (var fragment : bundles) {
 			var host = fragment.fragmentHost();
 			if (host != null) {
@@ -371,6 +397,146 @@ public class Solstice {
 		}
 	}
 
+	/**
+	 * Like {@link #startAllWithLazy(boolean)}, but activates bundles on a pool with the given number
+	 * of threads. Bundles are first resolved in the same order as {@link #startAllWithLazy(boolean)},
+	 * and then each one is activated once every bundle which exports a package it imports, provides
+	 * a capability it requires, or is a bundle it requires has been activated. Bundles whose
+	 * symbolic name is in {@code onMainThread} are activated on the calling thread, one at a time.
+	 */
+	public void startAllWithLazyInParallel(
+			boolean lazyValue, int threads, Collection<String> onMainThread) {
+		if (threads <= 1) {
+			startAllWithLazy(lazyValue);
+			return;
+		}
+		ensureStartIndexes();
+		var planned = new ArrayList<SolsticeManifest>();
+		plan = planned;
+		try {
+			startAllWithLazy(lazyValue);
+		} catch (RuntimeException e) {
+			// activate whatever would have been activated before the failure, same as startAllWithLazy
+			for (var manifest : planned) {
+				activate(manifest);
+			}
+			throw e;
+		} finally {
+			plan = null;
+		}
+		activateInParallel(planned, threads, new HashSet<>(onMainThread));
+	}
+
+	/** When non-null, {@link #start} records the bundles to activate here rather than activating. */
+	private List<SolsticeManifest> plan;
+
+	private void activateInParallel(
+			List<SolsticeManifest> planned, int threads, Set<String> onMainThread) {
+		var position = new HashMap<SolsticeManifest, Integer>();
+		for (int i = 0; i < planned.size(); ++i) {
+			position.put(planned.get(i), i);
+		}
+		// an edge only points to a bundle earlier in the plan, so there are no cycles
+		var blockedBy = new int[planned.size()];
+		var unblocks = new HashMap<SolsticeManifest, List<SolsticeManifest>>();
+		for (int i = 0; i < planned.size(); ++i) {
+			var manifest = planned.get(i);
+			for (var dependency : activationDependencies(manifest)) {
+				var depPosition = position.get(dependency);
+				if (depPosition != null && depPosition < i) {
+					++blockedBy[i];
+					unblocks.computeIfAbsent(dependency, unused -> new ArrayList<>()).add(manifest);
+				}
+			}
+		}
+		var ready = new ArrayDeque<SolsticeManifest>();
+		for (int i = 0; i < planned.size(); ++i) {
+			if (blockedBy[i] == 0) {
+				ready.add(planned.get(i));
+			}
+		}
+		var finished = new LinkedBlockingQueue<SolsticeManifest>();
+		// the first failure on the pool, which is rethrown just like startAllWithLazy would throw it
+		var failure = new AtomicReference<Throwable>();
+		var threadCount = new AtomicInteger();
+		var pool =
+				Executors.newFixedThreadPool(
+						threads,
+						runnable -> {
+							var thread =
+									new Thread(runnable, "solstice-activation-" + threadCount.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						});
+		try {
+			int remaining = planned.size();
+			while (remaining > 0) {
+				SolsticeManifest done;
+				var next = ready.poll();
+				if (next == null) {
+					done = Unchecked.get(finished::take);
+					var failed = failure.get();
+					if (failed instanceof RuntimeException) {
+						throw (RuntimeException) failed;
+					} else if (failed instanceof Error) {
+						throw (Error) failed;
+					} else if (failed != null) {
+						throw Unchecked.wrap((Exception) failed);
+					}
+				} else if (onMainThread.contains(next.getSymbolicName())) {
+					activate(next);
+					done = next;
+				} else {
+					pool.execute(
+							() -> {
+								try {
+									activate(next);
+								} catch (Throwable t) {
+									failure.compareAndSet(null, t);
+								} finally {
+									finished.add(next);
+								}
+							});
+					continue;
+				}
+				--remaining;
+				for (var unblocked : unblocks.getOrDefault(done, Collections.emptyList())) {
+					if (--blockedBy[position.get(unblocked)] == 0) {
+						ready.add(unblocked);
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/** Every bundle which provides something that the given bundle imports or requires. */
+	private List<SolsticeManifest> activationDependencies(SolsticeManifest manifest) {
+		var dependencies = new ArrayList<SolsticeManifest>();
+		for (var pkg : manifest.totalPkgImports()) {
+			dependencies.addAll(exportersByPkg.getOrDefault(pkg, Collections.emptyList()));
+		}
+		for (var cap : manifest.capRequires) {
+			var candidates =
+					providersByCap.get(cap.keyValue.isEmpty() ? cap.namespace : capKey(cap, 0));
+			if (candidates != null) {
+				for (var bundle : candidates) {
+					if (cap.isSubsetOfElementIn(bundle.capProvides)) {
+						dependencies.add(bundle);
+					}
+				}
+			}
+		}
+		for (var required : manifest.totalRequiredBundles()) {
+			var bundle = bundleForSymbolicName(required);
+			if (bundle != null) {
+				dependencies.add(bundle);
+			}
+		}
+		return dependencies;
+	}
+
 	private final Set<SolsticeManifest> activatingBundles = new HashSet<>();
 
 	/**
@@ -390,17 +556,14 @@ public class Solstice {
 	}
 
 	private void start(String symbolicName, boolean withTransitives) {
-		int numStarted = 0;
-		for (var bundle : bundles) {
-			if (bundle.getSymbolicName().equals(symbolicName)) {
-				++numStarted;
-				start(bundle, withTransitives);
-			}
-		}
-		if (numStarted == 0) {
+		var withName = bySymbolicNameIndex.get(symbolicName);
+		if (withName == null) {
 			throw new IllegalArgumentException(
 					"Cannot start because no bundle with name " + symbolicName);
 		}
+		for (var bundle : withName) {
+			start(bundle, withTransitives);
+		}
 	}
 
 	private void start(SolsticeManifest manifest) {
@@ -416,25 +579,29 @@ public class Solstice {
 		pkgs.addAll(manifest.totalPkgExports());
 		caps.addAll(manifest.capProvides);
 		if (withTransitives) {
-			String pkg;
-			while ((pkg = missingPkg(manifest)) != null) {
-				var bundles = unactivatedBundlesForPkg(pkg);
-				if (bundles.isEmpty()) {
-					throw new IllegalArgumentException(manifest + " imports missing package " + pkg);
-				} else {
-					for (var bundle : bundles) {
-						start(bundle);
+			// pkgs and caps only grow, so a single pass in order finds the same missing ones as
+			// rescanning from the start every time
+			for (var pkg : manifest.totalPkgImports()) {
+				if (!pkgs.contains(pkg)) {
+					var bundles = unactivatedBundlesForPkg(pkg);
+					if (bundles.isEmpty()) {
+						throw new IllegalArgumentException(manifest + " imports missing package " + pkg);
+					} else {
+						for (var bundle : bundles) {
+							start(bundle);
+						}
 					}
 				}
 			}
-			Capability cap;
-			while ((cap = missingCap(manifest)) != null) {
-				var bundles = unactivatedBundlesForCap(cap);
-				if (bundles.isEmpty()) {
-					throw new IllegalArgumentException(manifest + " requires missing capability " + cap);
-				} else {
-					for (var bundle : bundles) {
-						start(bundle);
+			for (var cap : manifest.capRequires) {
+				if (!caps.containsAnySupersetOf(cap)) {
+					var bundles = unactivatedBundlesForCap(cap);
+					if (bundles.isEmpty()) {
+						throw new IllegalArgumentException(manifest + " requires missing capability " + cap);
+					} else {
+						for (var bundle : bundles) {
+							start(bundle);
+						}
 					}
 				}
 			}
@@ -447,11 +614,65 @@ public class Solstice {
 				}
 			}
 		}
+		if (plan != null) {
+			plan.add(manifest);
+		} else {
+			activate(manifest);
+		}
+	}
+
+	/**
+	 * Activates the given bundles in order, and marks their packages and capabilities as available,
+	 * without resolving anything. See {@link ActivationPlan}.
+	 */
+	void replay(List<SolsticeManifest> order) {
+		for (var manifest : order) {
+			if (activatingBundles.add(manifest)) {
+				pkgs.addAll(manifest.totalPkgExports());
+				caps.addAll(manifest.capProvides);
+				activate(manifest);
+			}
+		}
+	}
+
+	/** Every bundle in the order its activation started, for {@link ActivationPlan}. */
+	private final List<SolsticeManifest> activationOrder =
+			Collections.synchronizedList(new ArrayList<>());
+
+	private final Map<SolsticeManifest, Long> activationMicros = new ConcurrentHashMap<>();
+
+	/** Passes every bundle activated so far, and how long it took, in the order they started. */
+	void forEachActivation(BiConsumer<SolsticeManifest, Long> consumer) {
+		synchronized (activationOrder) {
+			for (var manifest : activationOrder) {
+				consumer.accept(manifest, activationMicros.getOrDefault(manifest, 0L));
+			}
+		}
+	}
+
+	private final AtomicInteger activationFailures = new AtomicInteger();
+
+	/**
+	 * The number of activations so far which threw, or whose activator failed. A launch with any
+	 * failure doesn't record an {@link ActivationPlan}.
+	 */
+	public int activationFailures() {
+		return activationFailures.get();
+	}
+
+	private void activate(SolsticeManifest manifest) {
+		activationOrder.add(manifest);
+		long start = System.nanoTime();
 		// this happens when multiple with same version
 		try {
 			logger.info("activate {}", manifest);
 			manifest.hydrated.start();
+			if (manifest.hydrated instanceof ShimBundle
+					&& ((ShimBundle) manifest.hydrated).activatorFailed) {
+				activationFailures.incrementAndGet();
+			}
 		} catch (Exception e) {
+			activationFailures.incrementAndGet();
 			logger.warn("error in " + manifest, e);
 			if (Unchecked.anyMatches(
 					e,
@@ -459,22 +680,66 @@ public class Solstice {
 				logger.warn(
 						"to resolve a signing problem, take a look at https://github.com/equodev/equo-ide/blob/main/solstice/src/main/java/dev/equo/solstice/SignedJars.java");
 			}
+		} finally {
+			activationMicros.put(manifest, (System.nanoTime() - start) / 1000);
 		}
 	}
 
-	private Capability missingCap(SolsticeManifest manifest) {
-		for (var cap : manifest.capRequires) {
-			if (!caps.containsAnySupersetOf(cap)) {
-				return cap;
+	/**
+	 * Indexes of every non-fragment bundle by the packages it exports (including its fragments'
+	 * exports) and by the capabilities it provides, in classpath order. They are built on the first
+	 * {@link #start}, which is after {@link #warnAndModifyManifestsToFix()}, and neither exports nor
+	 * provided capabilities change after that.
+	 */
+	private Map<String, List<SolsticeManifest>> exportersByPkg, providersByCap;
+
+	private void ensureStartIndexes() {
+		if (exportersByPkg != null) {
+			return;
+		}
+		exportersByPkg = new HashMap<>();
+		providersByCap = new HashMap<>();
+		for (var bundle : bundles) {
+			if (bundle.isFragment()) {
+				continue;
 			}
+			for (var pkg : bundle.totalPkgExports()) {
+				addIfNotLast(exportersByPkg, pkg, bundle);
+			}
+			for (var cap : bundle.capProvides) {
+				addIfNotLast(providersByCap, cap.namespace, bundle);
+				for (int i = 0; i < cap.keyValue.size(); i += 2) {
+					addIfNotLast(providersByCap, capKey(cap, i), bundle);
+				}
+			}
+		}
+	}
+
+	/** The index key for the key-value pair at {@code i} of the given capability. */
+	private static String capKey(Capability cap, int i) {
+		return cap.namespace + ':' + cap.keyValue.get(i) + '=' + cap.keyValue.get(i + 1);
+	}
+
+	private static void addIfNotLast(
+			Map<String, List<SolsticeManifest>> map, String key, SolsticeManifest bundle) {
+		var list = map.computeIfAbsent(key, unused -> new ArrayList<>(1));
+		if (list.isEmpty() || list.get(list.size() - 1) != bundle) {
+			list.add(bundle);
 		}
-		return null;
 	}
 
 	private List<SolsticeManifest> unactivatedBundlesForCap(Capability targetCap) {
+		ensureStartIndexes();
+		// every provider of targetCap has its first key-value pair, or at least its namespace
+		var candidates =
+				providersByCap.get(
+						targetCap.keyValue.isEmpty() ? targetCap.namespace : capKey(targetCap, 0));
+		if (candidates == null) {
+			return Collections.emptyList();
+		}
 		Object bundlesForCap = null;
-		for (var bundle : bundles) {
-			if (bundle.isFragment() || activatingBundles.contains(bundle)) {
+		for (var bundle : candidates) {
+			if (activatingBundles.contains(bundle)) {
 				// targetCap wouldn't be missing if this bundle had it
 				continue;
 			}
@@ -485,23 +750,15 @@ public class Solstice {
 		return fastAddGet(bundlesForCap);
 	}
 
-	private String missingPkg(SolsticeManifest manifest) {
-		for (var pkg : manifest.totalPkgImports()) {
-			if (!pkgs.contains(pkg)) {
-				return pkg;
-			}
-		}
-		return null;
-	}
-
 	private List<SolsticeManifest> unactivatedBundlesForPkg(String targetPkg) {
+		ensureStartIndexes();
+		var exporters = exportersByPkg.get(targetPkg);
+		if (exporters == null) {
+			return Collections.emptyList();
+		}
 		Object bundlesForPkg = null;
-		for (var bundle : bundles) {
-			if (bundle.isFragment() || activatingBundles.contains(bundle)) {
-				// targetPkg wouldn't be missing if this bundle had it
-				continue;
-			}
-			if (bundle.totalPkgExports().contains(targetPkg)) {
+		for (var bundle : exporters) {
+			if (!activatingBundles.contains(bundle)) {
 				bundlesForPkg = fastAdd(bundlesForPkg, bundle);
 			}
 		}
@@ -534,22 +791,25 @@ public class Solstice {
 		}
 	}
 
+	private final Map<String, List<SolsticeManifest>> bySymbolicNameIndex = new HashMap<>();
+
 	SolsticeManifest bundleForSymbolicName(String name) {
-		for (var bundle : bundles) {
-			if (name.equals(bundle.getSymbolicName())) {
-				return bundle;
-			}
-		}
-		return null;
+		var withName = bySymbolicNameIndex.get(name);
+		return withName == null ? null : withName.get(0);
+	}
+
+	private final Map<String, SolsticeManifest> byJarUrlIndex = new HashMap<>();
+
+	/** Every bundle, in classpath order. */
+	List<SolsticeManifest> bundles() {
+		return Collections.unmodifiableList(bundles);
+	}
+
+	SolsticeManifest bundleForJarUrl(String jarUrl) {
+		return byJarUrlIndex.get(jarUrl);
 	}
 
 	SolsticeManifest bundleForUrl(URL source) {
-		String sourceString = "jar:" + source.toExternalForm() + "!";
-		for (var bundle : bundles) {
-			if (sourceString.equals(bundle.getJarUrl())) {
-				return bundle;
-			}
-		}
-		return null;
+		return byJarUrlIndex.get("jar:" + source.toExternalForm() + "!");
 	}
 }
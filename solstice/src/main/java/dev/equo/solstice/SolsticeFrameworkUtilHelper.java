@@ -13,24 +13,44 @@
  *******************************************************************************/
 package dev.equo.solstice;
 
+import java.util.Objects;
 import java.util.Optional;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.connect.FrameworkUtilHelper;
 
-/** Equinox will sometimes use this to determine what bundle a class comes from. */
+/**
+ * Equinox will sometimes use this to determine what bundle a class comes from. The answer for each
+ * class is cached, since {@code FrameworkUtil.getBundle} is called constantly by DS, preferences,
+ * and every {@code Platform.getBundle}-style helper.
+ */
 public class SolsticeFrameworkUtilHelper implements FrameworkUtilHelper {
-	private static Solstice owner;
+	private static ClassValue<Optional<Bundle>> bundleForClass;
 
 	public static void initialize(Solstice owner) {
-		SolsticeFrameworkUtilHelper.owner = owner;
+		SolsticeFrameworkUtilHelper.bundleForClass =
+				new ClassValue<>() {
+					@Override
+					protected Optional<Bundle> computeValue(Class<?> type) {
+						return lookup(owner, type);
+					}
+				};
 	}
 
 	@Override
 	public Optional<Bundle> getBundle(Class<?> classFromBundle) {
-		if (owner == null) {
+		var cache = bundleForClass;
+		if (cache == null) {
 			// this class shouldn't be around unless Solstice has been uninitialized, but just in case...
 			return Optional.empty();
 		}
+		return cache.get(classFromBundle);
+	}
+
+	/**
+	 * Throws rather than returning if Solstice hasn't been hydrated yet, so that a too-early answer
+	 * is never cached.
+	 */
+	private static Optional<Bundle> lookup(Solstice owner, Class<?> classFromBundle) {
 		var domain = classFromBundle.getProtectionDomain();
 		var source = domain.getCodeSource();
 		if (source == null) {
@@ -45,6 +65,6 @@ public class SolsticeFrameworkUtilHelper implements FrameworkUtilHelper {
 		if (manifest.isFragment()) {
 			manifest = owner.bundleForSymbolicName(manifest.fragmentHost());
 		}
-		return Optional.of(manifest.hydrated);
+		return Optional.of(Objects.requireNonNull(manifest.hydrated));
 	}
 }
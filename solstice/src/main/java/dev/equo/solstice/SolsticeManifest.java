@@ -32,6 +32,7 @@ import java.util.TreeMap;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.jar.Manifest;
+import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 import org.eclipse.osgi.util.ManifestElement;
 import org.osgi.framework.Bundle;
@@ -130,6 +131,32 @@ public class SolsticeManifest {
 		}
 	}
 
+	/** Restores a manifest which was parsed earlier, see {@link ManifestIndex}. */
+	SolsticeManifest(
+			String jarUrl,
+			int classpathOrder,
+			Map<String, String> headersOriginal,
+			@Nullable String symbolicName,
+			Version version,
+			ArrayList<String> requiredBundles,
+			ArrayList<String> pkgImports,
+			ArrayList<String> pkgExports,
+			List<Capability> capProvides,
+			List<Capability> capRequires,
+			boolean lazy) {
+		this.jarUrl = jarUrl;
+		this.classpathOrder = classpathOrder;
+		this.headersOriginal.putAll(headersOriginal);
+		this.symbolicName = symbolicName;
+		this.version = version;
+		this.requiredBundles = requiredBundles;
+		this.pkgImports = pkgImports;
+		this.pkgExports = pkgExports;
+		this.capProvides = capProvides;
+		this.capRequires = capRequires;
+		this.lazy = lazy;
+	}
+
 	private static void parseProvide(CapabilityParsed parsed, ArrayList<Capability> total) {
 		if (parsed.attributes.size() == 1) {
 			var attr = parsed.attributes.entrySet().iterator().next();
@@ -194,8 +221,7 @@ public class SolsticeManifest {
 			return Collections.emptyList();
 		}
 		var capabilities = new ArrayList<Capability>();
-		var raws = parseAndStripCapability(header);
-		for (var raw : raws) {
+		for (var raw : parsed) {
 			parser.accept(raw, capabilities);
 		}
 		return capabilities;
@@ -227,6 +253,8 @@ public class SolsticeManifest {
 		}
 	}
 
+	private static final Pattern VERSION_GT = Pattern.compile("\\(version>=(.*?)\\)");
+
 	private static class CapabilityParsed {
 		final String namespace;
 		final Map<String, String> attributes = new TreeMap<>();
@@ -259,7 +287,7 @@ public class SolsticeManifest {
 		}
 
 		private String stripVersionsFromFilter(String filter) {
-			var removeVersionGt = filter.replaceAll("\\(version>=(.*?)\\)", "");
+			var removeVersionGt = VERSION_GT.matcher(filter).replaceAll("");
 			var removeEmptyNots = removeVersionGt.replace("(!)", "");
 			if (removeEmptyNots.startsWith("(&(") && removeEmptyNots.endsWith("))")) {
 				return removeEmptyNots.substring(2, removeEmptyNots.length() - 1);
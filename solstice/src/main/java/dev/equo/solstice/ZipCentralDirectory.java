@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The entries of a zip which is already in a {@link ByteBuffer}, read from its central directory,
+ * so that a jar nested in another jar can be read in place. Zip64 is not supported, which is fine
+ * for the jars inside a bundle. Like {@link PackageIndexedClassLoader}, it only uses JDK classes.
+ */
+class ZipCentralDirectory {
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int END_SIZE = 22;
+	private static final int MAX_COMMENT = 0xFFFF;
+	private static final int CENTRAL_SIGNATURE = 0x02014b50;
+	private static final int CENTRAL_SIZE = 46;
+	private static final int LOCAL_SIGNATURE = 0x04034b50;
+	private static final int LOCAL_SIZE = 30;
+	private static final int STORED = 0;
+	private static final int DEFLATED = 8;
+
+	static class Entry {
+		final int method;
+		final int compressedSize;
+		final int size;
+		final int localHeaderOffset;
+
+		private Entry(int method, int compressedSize, int size, int localHeaderOffset) {
+			this.method = method;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+	}
+
+	private final ByteBuffer zip;
+	/** Every entry by name, in the order of the central directory. */
+	final Map<String, Entry> entries = new LinkedHashMap<>();
+
+	ZipCentralDirectory(ByteBuffer zip) throws IOException {
+		this.zip = zip.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		int end = findEnd();
+		int count = u16(end + 10);
+		long centralOffset = u32(end + 16);
+		if (count == 0xFFFF || centralOffset == 0xFFFFFFFFL) {
+			throw new IOException("Zip64 is not supported");
+		}
+		int pos = (int) centralOffset;
+		for (int i = 0; i < count; ++i) {
+			if (this.zip.getInt(pos) != CENTRAL_SIGNATURE) {
+				throw new IOException("Bad central directory entry at " + pos);
+			}
+			int nameLength = u16(pos + 28);
+			var nameBytes = new byte[nameLength];
+			this.zip.duplicate().position(pos + CENTRAL_SIZE).get(nameBytes);
+			var name = new String(nameBytes, StandardCharsets.UTF_8);
+			entries.put(
+					name,
+					new Entry(
+							u16(pos + 10), (int) u32(pos + 20), (int) u32(pos + 24), (int) u32(pos + 42)));
+			pos += CENTRAL_SIZE + nameLength + u16(pos + 30) + u16(pos + 32);
+		}
+	}
+
+	private int findEnd() throws IOException {
+		int limit = Math.max(0, zip.limit() - END_SIZE - MAX_COMMENT);
+		for (int pos = zip.limit() - END_SIZE; pos >= limit; --pos) {
+			if (zip.getInt(pos) == END_SIGNATURE) {
+				return pos;
+			}
+		}
+		throw new IOException("Not a zip");
+	}
+
+	/** The raw bytes of the given entry, which are its content if it is stored. */
+	ByteBuffer raw(Entry entry) throws IOException {
+		int local = entry.localHeaderOffset;
+		if (zip.getInt(local) != LOCAL_SIGNATURE) {
+			throw new IOException("Bad local header at " + local);
+		}
+		int start = local + LOCAL_SIZE + u16(local + 26) + u16(local + 28);
+		return zip.duplicate().position(start).limit(start + entry.compressedSize).slice();
+	}
+
+	/** The content of the given entry, without copying if it is stored. */
+	ByteBuffer content(Entry entry) throws IOException {
+		var raw = raw(entry);
+		if (entry.method == STORED) {
+			return raw;
+		} else if (entry.method == DEFLATED) {
+			var inflater = new Inflater(true);
+			try {
+				inflater.setInput(raw);
+				var content = new byte[entry.size];
+				int read = 0;
+				while (read < content.length) {
+					int inflated = inflater.inflate(content, read, content.length - read);
+					if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+						break;
+					}
+					read += inflated;
+				}
+				if (read != content.length) {
+					throw new IOException("Truncated entry");
+				}
+				return ByteBuffer.wrap(content);
+			} catch (DataFormatException e) {
+				throw new IOException(e);
+			} finally {
+				inflater.end();
+			}
+		} else {
+			throw new IOException("Unsupported compression method " + entry.method);
+		}
+	}
+
+	private int u16(int pos) {
+		return zip.getShort(pos) & 0xFFFF;
+	}
+
+	private long u32(int pos) {
+		return zip.getInt(pos) & 0xFFFFFFFFL;
+	}
+}
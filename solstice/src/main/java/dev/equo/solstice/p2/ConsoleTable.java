@@ -74,10 +74,10 @@ public class ConsoleTable {
 	public static String nameAndDescription(Collection<P2Unit> units, Format format) {
 		var table = new WordWrapTable();
 		for (var unit : units) {
-			var n = unit.properties.get(P2Unit.P2_NAME);
+			var n = unit.properties().get(P2Unit.P2_NAME);
 			var name = n != null ? n : "(no " + P2Unit.P2_NAME + ")";
 			table.add(unit.id, name);
-			var desc = unit.properties.get(P2Unit.P2_DESC);
+			var desc = unit.properties().get(P2Unit.P2_DESC);
 			if (desc != null) {
 				table.add("", "  " + desc);
 			}
@@ -276,13 +276,13 @@ public class ConsoleTable {
 			var repoStatus = RepoStatus.forUnit(unit);
 			table.add("maven coordinate", repoStatus.coordinate());
 			table.add("maven repo", repoStatus.repo());
-			if (unit.filter != null) {
-				table.add("filter", unit.filter.toString());
+			if (unit.filter() != null) {
+				table.add("filter", unit.filter().toString());
 			}
-			for (var prop : unit.properties.entrySet()) {
+			for (var prop : unit.properties().entrySet()) {
 				table.add("prop " + prop.getKey(), prop.getValue());
 			}
-			var sortedOptionalsLast = new ArrayList<>(unit.requires);
+			var sortedOptionalsLast = new ArrayList<>(unit.requires());
 			sortedOptionalsLast.sort(
 					Comparator.<P2Session.Requirement>comparingInt(u -> u.isOptional() ? 1 : 0)
 							.thenComparing(Comparator.naturalOrder()));
@@ -13,51 +13,180 @@
  *******************************************************************************/
 package dev.equo.solstice.p2;
 
+import dev.equo.solstice.HashMisc;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
 import okhttp3.OkHttpClient;
 import okio.Okio;
+import org.slf4j.LoggerFactory;
 
 class JarCache {
-	final File bundlePool = CacheLocations.p2bundlePool();
+	final File bundlePool;
 	final OkHttpClient client = new OkHttpClient.Builder().build();
 	final P2ClientCache cachingPolicy;
+	final @Nullable String proxy;
 
 	JarCache(P2ClientCache cachingPolicy) {
+		this(CacheLocations.p2bundlePool(), cachingPolicy, P2Proxy.forClients());
+	}
+
+	/** If {@code proxy} is non-null, then jars are downloaded through that {@link P2Proxy}. */
+	JarCache(File bundlePool, P2ClientCache cachingPolicy, @Nullable String proxy) {
+		this.bundlePool = bundlePool;
 		this.cachingPolicy = cachingPolicy;
+		this.proxy = proxy;
 		FileMisc.mkdirs(bundlePool);
 	}
 
 	public File download(P2Unit unit) throws IOException {
-		File repoDir = new File(bundlePool, OfflineCache.filenameSafe(unit.getRepoUrl()));
-		File jar = new File(repoDir, unit.id + "_" + unit.version + ".jar");
+		return download(unit.getRepoUrls(), unit.id + "_" + unit.version + ".jar", null);
+	}
+
+	/**
+	 * Downloads {@code plugins/<filename>} from the first of the given repositories which has it, and
+	 * caches it under the first repository. Jars in a local ({@code file:}) repository are returned
+	 * in place without any download. If {@code sha256} is non-null, then a jar which doesn't match it
+	 * is treated as a failure of that repository, and a cached jar which doesn't match it is
+	 * downloaded again.
+	 */
+	File download(List<String> repoUrls, String filename, @Nullable String sha256)
+			throws IOException {
+		// the same unit can come from several repositories, fall back to the others in order
+		Exception firstFailure = null;
+		// jars in a local repository are used in place
+		var remoteUrls = new ArrayList<String>(repoUrls.size());
+		for (var url : repoUrls) {
+			if (!LocalRepo.isLocal(url)) {
+				remoteUrls.add(url);
+			} else {
+				var extractTo = within(new File(bundlePool, OfflineCache.filenameSafe(url)), filename);
+				var local = LocalRepo.jar(url + "plugins/" + filename, extractTo);
+				if (local != null && !matches(local, sha256) && local.equals(extractTo)) {
+					// a stale copy out of a local archive, extract it again
+					Files.delete(extractTo.toPath());
+					local = LocalRepo.jar(url + "plugins/" + filename, extractTo);
+				}
+				if (local != null) {
+					if (matches(local, sha256)) {
+						return local;
+					}
+					firstFailure =
+							addFailure(
+									firstFailure,
+									new IllegalArgumentException(
+											"Checksum mismatch at " + local + ", expected " + sha256));
+				}
+			}
+		}
+		if (remoteUrls.isEmpty()) {
+			if (firstFailure != null) {
+				throw Unchecked.wrap(firstFailure);
+			}
+			throw new IllegalArgumentException("No plugins/" + filename + " in " + repoUrls);
+		}
+		String repoUrl = remoteUrls.get(0);
+		File repoDir = new File(bundlePool, OfflineCache.filenameSafe(repoUrl));
+		File jar = within(repoDir, filename);
 		if (jar.isFile()) {
-			return jar;
+			if (matches(jar, sha256)) {
+				return jar;
+			}
+			LoggerFactory.getLogger(JarCache.class)
+					.warn("Checksum mismatch at {}, expected {}, downloading it again", jar, sha256);
+			Files.delete(jar.toPath());
 		}
 		if (cachingPolicy.networkAllowed()) {
 			if (!repoDir.isDirectory()) {
 				FileMisc.mkdirs(repoDir);
-				FileMisc.writeToken(repoDir, ".url", unit.getRepoUrl());
-			}
-			var request = P2Client.buildRequest(unit.getJarUrl());
-			var tempFile = File.createTempFile(unit.id, ".jar");
-			try (var response = client.newCall(request).execute()) {
-				if (response.code() == 200) {
-					try (var sink = Okio.buffer(Okio.sink(tempFile))) {
-						sink.writeAll(response.body().source());
+				FileMisc.writeToken(repoDir, ".url", repoUrl);
+			}
+			var tempFile = File.createTempFile(filename, ".jar");
+			for (var url : remoteUrls) {
+				try {
+					downloadTo(url + "plugins/" + filename, tempFile);
+					if (!matches(tempFile, sha256)) {
+						throw new IllegalArgumentException(
+								"Checksum mismatch at " + url + "plugins/" + filename + ", expected " + sha256);
 					}
-				} else {
-					throw new IllegalArgumentException(response.code() + " at " + unit.getJarUrl());
+					firstFailure = null;
+					break;
+				} catch (IOException | IllegalArgumentException e) {
+					firstFailure = addFailure(firstFailure, e);
+				}
+			}
+			if (firstFailure != null) {
+				Files.deleteIfExists(tempFile.toPath());
+				if (firstFailure instanceof IOException) {
+					throw (IOException) firstFailure;
 				}
+				throw Unchecked.wrap(firstFailure);
 			}
 			Files.move(tempFile.toPath(), jar.toPath());
 			return jar;
 		} else {
 			throw new IllegalStateException(
 					"No cached version of "
-							+ unit.getJarUrl()
+							+ repoUrl
+							+ "plugins/"
+							+ filename
 							+ " available, you must turn off offline mode.");
 		}
 	}
+
+	/** True if there is no expected {@code sha256}, or if the given jar matches it. */
+	private static boolean matches(File jar, @Nullable String sha256) throws IOException {
+		return sha256 == null || sha256.equals(sha256(jar));
+	}
+
+	/** Returns the first failure, with every later one added to it as suppressed. */
+	private static Exception addFailure(@Nullable Exception firstFailure, Exception failure) {
+		if (firstFailure == null) {
+			return failure;
+		}
+		firstFailure.addSuppressed(failure);
+		return firstFailure;
+	}
+
+	/**
+	 * Returns the given file within the given directory, or throws if it would resolve outside it.
+	 */
+	private static File within(File dir, String filename) {
+		var dirPath = dir.toPath().toAbsolutePath().normalize();
+		var file = dirPath.resolve(filename).normalize();
+		if (!file.startsWith(dirPath) || file.equals(dirPath)) {
+			throw new IllegalArgumentException("Jar filename escapes the bundle pool: " + filename);
+		}
+		return file.toFile();
+	}
+
+	/** Returns the hex sha-256 of the given file. */
+	static String sha256(File file) throws IOException {
+		var digest = HashMisc.sha256();
+		var buffer = new byte[64 * 1024];
+		try (var input = new FileInputStream(file)) {
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		return HashMisc.toHex(digest.digest());
+	}
+
+	private void downloadTo(String url, File file) throws IOException {
+		var request = P2Client.buildRequest(proxy == null ? url : P2Proxy.proxied(proxy, url));
+		try (var response = client.newCall(request).execute()) {
+			if (response.code() == 200) {
+				try (var sink = Okio.buffer(Okio.sink(file))) {
+					sink.writeAll(response.body().source());
+				}
+			} else {
+				throw new IllegalArgumentException(response.code() + " at " + url);
+			}
+		}
+	}
 }
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice.p2;
+
+import java.lang.module.ModuleFinder;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The capabilities which every JRE provides, so that requirements on them can be skipped without
+ * looking at their providers. This is the same idea as the {@code a.jre.javase} unit which some p2
+ * repositories contain, but it is built from the Java SE modules of the running JDK, so it works
+ * whether or not a repository has that unit.
+ */
+class JreProfile {
+	/** The id of the p2 unit which describes the capabilities of a JRE. */
+	static final String A_JRE_JAVASE = "a.jre.javase";
+
+	private static final Set<String> PACKAGES = javaSePackages();
+
+	private static Set<String> javaSePackages() {
+		var packages = new HashSet<String>();
+		for (var module : ModuleFinder.ofSystem().findAll()) {
+			var descriptor = module.descriptor();
+			if (!descriptor.name().startsWith("java.")) {
+				continue;
+			}
+			for (var export : descriptor.exports()) {
+				if (!export.isQualified()) {
+					packages.add(export.source());
+				}
+			}
+		}
+		return Set.copyOf(packages);
+	}
+
+	/** Returns true if every JRE satisfies a requirement on the given capability. */
+	static boolean provides(String namespace, String name) {
+		if (!"java.package".equals(namespace)) {
+			return false;
+		}
+		// OSGi always loads java.* from the boot classpath, no bundle can provide it
+		return name.startsWith("java.") || PACKAGES.contains(name);
+	}
+
+	/** Returns true if the given unit is a p2 description of a JRE. */
+	static boolean isJre(P2Unit unit) {
+		return A_JRE_JAVASE.equals(unit.id);
+	}
+}
@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2022-2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice.p2;
+
+import dev.equo.solstice.HashMisc;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+
+/**
+ * Reads p2 repositories which are on the local filesystem ({@code file:/some/repo/}) or inside a
+ * local archive ({@code jar:file:/some/repo.zip!/}). Files are memory-mapped rather than copied
+ * onto the heap, and they bypass the metadata caches and the bundle pool entirely, because a local
+ * read is already as fast as a cache.
+ */
+class LocalRepo {
+	private static final String FILE = "file:";
+	private static final String JAR_FILE = "jar:file:";
+	private static final String ARCHIVE_SEPARATOR = "!/";
+
+	/** Returns true if the given url is a {@code file:} or {@code jar:file:} url. */
+	static boolean isLocal(String url) {
+		return url.startsWith(FILE) || url.startsWith(JAR_FILE);
+	}
+
+	/** Returns the file for a {@code file:} url, accepting both encoded and unencoded paths. */
+	static File toFile(String fileUrl) {
+		try {
+			return Path.of(URI.create(fileUrl)).toFile();
+		} catch (IllegalArgumentException e) {
+			// p2 repositories often contain unencoded paths, e.g. with spaces
+			var path = fileUrl.substring(FILE.length());
+			while (path.startsWith("//")) {
+				path = path.substring(1);
+			}
+			return new File(path);
+		}
+	}
+
+	/** Returns the archive of a {@code jar:file:} url, or the file of a {@code file:} url. */
+	private static File fileOf(String url) {
+		if (!url.startsWith(JAR_FILE)) {
+			return toFile(url);
+		}
+		int separator = url.indexOf(ARCHIVE_SEPARATOR);
+		if (separator == -1) {
+			throw new IllegalArgumentException("Expected " + ARCHIVE_SEPARATOR + " in " + url);
+		}
+		return toFile(url.substring("jar:".length(), separator));
+	}
+
+	/**
+	 * Returns the content at the given local url, memory-mapped if it is a plain file, or null if
+	 * there is nothing there. The mapping is only released once the buffer is garbage collected, so
+	 * callers should parse it and drop it rather than hold onto it.
+	 */
+	static @Nullable ByteBuffer read(String url) throws IOException {
+		if (url.startsWith(JAR_FILE)) {
+			var archive = fileOf(url);
+			if (!archive.isFile()) {
+				return null;
+			}
+			try (var zip = new ZipFile(archive)) {
+				var entry =
+						zip.getEntry(
+								url.substring(url.indexOf(ARCHIVE_SEPARATOR) + ARCHIVE_SEPARATOR.length()));
+				if (entry == null) {
+					return null;
+				}
+				try (var input = zip.getInputStream(entry)) {
+					return ByteBuffer.wrap(input.readAllBytes());
+				}
+			}
+		}
+		var file = toFile(url);
+		if (!file.isFile()) {
+			return null;
+		}
+		try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	/**
+	 * Returns the given local jar, in place if it is a plain file. A jar inside an archive is copied
+	 * to {@code extractTo} first. Returns null if there is nothing there.
+	 */
+	static @Nullable File jar(String url, File extractTo) throws IOException {
+		if (!url.startsWith(JAR_FILE)) {
+			var file = toFile(url);
+			return file.isFile() ? file : null;
+		}
+		if (extractTo.isFile()) {
+			return extractTo;
+		}
+		var content = read(url);
+		if (content == null) {
+			return null;
+		}
+		var tempFile = File.createTempFile(extractTo.getName(), ".jar");
+		try (var channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE)) {
+			while (content.hasRemaining()) {
+				channel.write(content);
+			}
+		}
+		FileMisc.mkdirs(extractTo.getParentFile());
+		Files.move(tempFile.toPath(), extractTo.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return extractTo;
+	}
+
+	/**
+	 * Returns the sha-256 of the content at the given local url, or a fixed token if there is nothing
+	 * there, so that the query cache can validate local metadata the same way as cached metadata. The
+	 * digest is only recomputed when the size or last-modified time of the file has changed.
+	 */
+	static String digest(String url) throws IOException {
+		var file = fileOf(url);
+		if (!file.isFile()) {
+			return ABSENT;
+		}
+		long size = file.length();
+		long lastModified = file.lastModified();
+		var cached = digests.get(url);
+		if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+			return cached.hex;
+		}
+		String hex;
+		if (url.startsWith(JAR_FILE)) {
+			var content = read(url);
+			if (content == null) {
+				hex = ABSENT;
+			} else {
+				var digest = HashMisc.sha256();
+				digest.update(content);
+				hex = HashMisc.toHex(digest.digest());
+			}
+		} else {
+			// streamed rather than mapped, so that hashing doesn't leave a mapping behind
+			try (var input =
+					new DigestInputStream(Files.newInputStream(file.toPath()), HashMisc.sha256())) {
+				input.transferTo(OutputStream.nullOutputStream());
+				hex = HashMisc.toHex(input.getMessageDigest().digest());
+			}
+		}
+		digests.put(url, new Digest(size, lastModified, hex));
+		return hex;
+	}
+
+	private static final String ABSENT = "absent";
+
+	private static final ConcurrentHashMap<String, Digest> digests = new ConcurrentHashMap<>();
+
+	private static class Digest {
+		final long size, lastModified;
+		final String hex;
+
+		Digest(long size, long lastModified, String hex) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.hex = hex;
+		}
+	}
+
+	/** Returns the bytes of the given buffer, without copying if it is already backed by them. */
+	static byte[] toBytes(ByteBuffer buffer) {
+		if (buffer.hasArray()
+				&& buffer.arrayOffset() == 0
+				&& buffer.position() == 0
+				&& buffer.remaining() == buffer.array().length) {
+			return buffer.array();
+		}
+		var bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+
+	/** Streams the given buffer without copying it onto the heap first. */
+	static InputStream asStream(ByteBuffer buffer) {
+		var source = buffer.duplicate();
+		return new InputStream() {
+			@Override
+			public int read() {
+				return source.hasRemaining() ? source.get() & 0xFF : -1;
+			}
+
+			@Override
+			public int read(byte[] bytes, int off, int len) {
+				if (!source.hasRemaining()) {
+					return -1;
+				}
+				int count = Math.min(len, source.remaining());
+				source.get(bytes, off, count);
+				return count;
+			}
+
+			@Override
+			public int available() {
+				return source.remaining();
+			}
+		};
+	}
+}
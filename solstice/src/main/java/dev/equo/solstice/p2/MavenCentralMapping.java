@@ -20,9 +20,9 @@ class MavenCentralMapping {
 	private static final String DASH_SNAPSHOT = "-SNAPSHOT";
 
 	static @Nullable String getMavenCentralCoord(P2Unit unit) {
-		var groupId = unit.properties.get(P2Unit.MAVEN_GROUP_ID);
-		var artifactId = unit.properties.get(P2Unit.MAVEN_ARTIFACT_ID);
-		var version = unit.properties.get(P2Unit.MAVEN_VERSION);
+		var groupId = unit.properties().get(P2Unit.MAVEN_GROUP_ID);
+		var artifactId = unit.properties().get(P2Unit.MAVEN_ARTIFACT_ID);
+		var version = unit.properties().get(P2Unit.MAVEN_VERSION);
 		if (groupId != null && artifactId != null && version != null) {
 			var groupArtifact = groupIdArtifactId(unit.id);
 			if (groupArtifact != null) {
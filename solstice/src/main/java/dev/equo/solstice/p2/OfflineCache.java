@@ -13,6 +13,7 @@
  *******************************************************************************/
 package dev.equo.solstice.p2;
 
+import dev.equo.solstice.HashMisc;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -76,12 +77,44 @@ class OfflineCache {
 
 	private static final String URL = "url";
 	private static final String CONTENT = "content";
+	private static final String SHA_256 = "sha256";
 
 	public void put(String url, byte[] data) throws IOException {
 		var dir = new File(rootDir, filenameSafe(url));
 		FileMisc.mkdirs(dir);
+		Files.deleteIfExists(new File(dir, SHA_256).toPath());
 		FileMisc.writeToken(dir, URL, url);
 		Files.write(new File(dir, CONTENT).toPath(), data);
+		FileMisc.writeToken(dir, SHA_256, sha256(data));
+	}
+
+	/**
+	 * Returns the sha-256 of the content which is cached for the given url, or null if nothing is
+	 * cached. Reads only a small token, so it is cheap enough to validate other caches against.
+	 */
+	public @Nullable String digest(String url) throws IOException {
+		var dir = new File(rootDir, filenameSafe(url));
+		if (!dir.isDirectory() || !FileMisc.readToken(dir, URL).equals(Optional.of(url))) {
+			return null;
+		}
+		var digest = FileMisc.readToken(dir, SHA_256);
+		if (digest.isPresent()) {
+			return digest.get();
+		}
+		// entries which were cached before we started recording digests
+		var content = new File(dir, CONTENT);
+		if (!content.isFile()) {
+			return null;
+		}
+		var computed = sha256(Files.readAllBytes(content.toPath()));
+		FileMisc.writeToken(dir, SHA_256, computed);
+		return computed;
+	}
+
+	private static String sha256(byte[] data) {
+		var digest = HashMisc.sha256();
+		digest.update(data);
+		return HashMisc.toHex(digest.digest());
 	}
 
 	public void put404(String url) throws IOException {
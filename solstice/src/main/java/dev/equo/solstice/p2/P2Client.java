@@ -16,22 +16,33 @@ package dev.equo.solstice.p2;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
+import javax.annotation.Nullable;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
 import okhttp3.Cache;
 import okhttp3.Credentials;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import org.osgi.framework.Version;
 import org.tukaani.xz.XZInputStream;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
@@ -46,6 +57,7 @@ public class P2Client implements AutoCloseable {
 	private final OfflineCache offlineMetadataCache;
 	private final JarCache jarCache;
 	private final LockFile lock;
+	private final @Nullable String proxy = P2Proxy.forClients();
 
 	public P2Client() throws IOException {
 		this(P2ClientCache.PREFER_OFFLINE);
@@ -63,7 +75,7 @@ public class P2Client implements AutoCloseable {
 			metadataResponseCache = null;
 			metadataClient = new OkHttpClient.Builder().build();
 		}
-		offlineMetadataCache = new OfflineCache(new File(p2metadata, "offline"));
+		offlineMetadataCache = new OfflineCache(new File(p2metadata, OFFLINE));
 		lock = new LockFile(p2metadata);
 	}
 
@@ -71,6 +83,11 @@ public class P2Client implements AutoCloseable {
 		return jarCache.download(unit);
 	}
 
+	/** Downloads a jar which was recorded in a lock file, see {@link JarCache#download}. */
+	File download(List<String> repoUrls, String filename, String sha256) throws IOException {
+		return jarCache.download(repoUrls, filename, sha256);
+	}
+
 	@Override
 	public void close() throws IOException {
 		if (metadataResponseCache != null) {
@@ -80,29 +97,54 @@ public class P2Client implements AutoCloseable {
 	}
 
 	private static final String CONTENT_XML = "content.xml";
+	private static final String OFFLINE = "offline";
 	private static final String COMPOSITE_XML = "compositeContent.xml";
 
 	void addUnits(P2Session session, String url) throws Exception {
-		Unchecked.ThrowingConsumer<Folder> addUnits =
+		for (var content : resolveContent(url)) {
+			parseContentXml(session, content.folder, content.xml);
+		}
+	}
+
+	/** The raw {@code content.xml} of a single non-composite p2 repository. */
+	static class Content {
+		final Folder folder;
+		final String xml;
+
+		Content(Folder folder, String xml) {
+			this.folder = folder;
+			this.xml = xml;
+		}
+	}
+
+	/**
+	 * Resolves every {@code content.xml} which is reachable from the given url, without parsing them
+	 * into units.
+	 */
+	List<Content> resolveContent(String url) throws Exception {
+		var contents = new ArrayList<Content>();
+		Unchecked.ThrowingConsumer<Folder> addContent =
 				(Folder root) -> {
 					if (!root.metadataName.equals(CONTENT_XML)) {
 						throw new IllegalArgumentException(
 								"Expected endsWith /" + CONTENT_XML + " but was " + root.url + root.metadataName);
 					}
-					var contentXml = resolveXml(root.url, root.metadataName);
-					parseContentXml(session, root, contentXml);
+					contents.add(new Content(root, resolveXml(root.url, root.metadataName)));
 				};
 		var queue = new ArrayDeque<Folder>();
 		queue.push(new Folder(url));
 		while (!queue.isEmpty()) {
 			var dir = queue.pop();
 			if (!dir.isComposite()) {
-				addUnits.accept(new Folder(dir.url, dir.metadataName));
+				addContent.accept(new Folder(dir.url, dir.metadataName));
 			} else {
 				var children = parseComposite(resolveXml(dir.url, dir.metadataName));
 				for (var child : children) {
-					if (child.startsWith("https://") || child.startsWith("http://")) {
-						queue.push(new Folder(child + "/"));
+					if (child.startsWith("https://")
+							|| child.startsWith("http://")
+							|| child.startsWith("file:/")
+							|| child.startsWith("jar:")) {
+						queue.push(new Folder(child.endsWith("/") ? child : child + "/"));
 					} else {
 						if (child.startsWith("file:")) {
 							child = child.substring("file:".length());
@@ -112,6 +154,7 @@ public class P2Client implements AutoCloseable {
 				}
 			}
 		}
+		return contents;
 	}
 
 	private String getString(String url) throws IOException, NotFoundException {
@@ -151,7 +194,55 @@ public class P2Client implements AutoCloseable {
 		return builder.build();
 	}
 
+	/** Every metadata url which this client has read, whether from the network or the cache. */
+	private final Set<String> metadataUrls = new LinkedHashSet<>();
+
+	/**
+	 * Returns the sha-256 of every metadata file which this client has read, keyed by url, or null if
+	 * any of them are not in the offline cache.
+	 */
+	@Nullable
+	Map<String, String> metadataDigests() throws IOException {
+		var digests = new LinkedHashMap<String, String>();
+		for (var url : metadataUrls) {
+			var digest =
+					LocalRepo.isLocal(url) ? LocalRepo.digest(url) : offlineMetadataCache.digest(url);
+			if (digest == null) {
+				return null;
+			}
+			digests.put(url, digest);
+		}
+		return digests;
+	}
+
+	/**
+	 * Returns the sha-256 of the given metadata url in the offline cache, or null if it isn't cached.
+	 */
+	static @Nullable String cachedMetadataDigest(String url) throws IOException {
+		if (LocalRepo.isLocal(url)) {
+			return LocalRepo.digest(url);
+		}
+		return new OfflineCache(new File(CacheLocations.p2metadata(), OFFLINE)).digest(url);
+	}
+
+	/** Like {@link #getBytes} but local repositories are memory-mapped rather than copied. */
+	private ByteBuffer getBuffer(String url) throws IOException, NotFoundException {
+		if (LocalRepo.isLocal(url)) {
+			metadataUrls.add(url);
+			var local = LocalRepo.read(url);
+			if (local == null) {
+				throw new NotFoundException(url);
+			}
+			return local;
+		}
+		return ByteBuffer.wrap(getBytes(url));
+	}
+
 	private byte[] getBytes(String url) throws IOException, NotFoundException {
+		if (LocalRepo.isLocal(url)) {
+			return LocalRepo.toBytes(getBuffer(url));
+		}
+		metadataUrls.add(url);
 		if (cachingPolicy.tryOfflineFirst()) {
 			var cached = offlineMetadataCache.get(url);
 			if (cached != null) {
@@ -162,7 +253,7 @@ public class P2Client implements AutoCloseable {
 			}
 		}
 		if (cachingPolicy.networkAllowed()) {
-			var request = buildRequest(url);
+			var request = buildRequest(proxy == null ? url : P2Proxy.proxied(proxy, url));
 			try (var response = metadataClient.newCall(request).execute()) {
 				if (response.code() == 404) {
 					if (cachingPolicy.cacheAllowed()) {
@@ -296,17 +387,17 @@ public class P2Client implements AutoCloseable {
 		var rawUrl = url + metadataTarget;
 
 		try {
-			var bytes = getBytes(xzUrl);
-			try (var stream = new XZInputStream(new ByteArrayInputStream(bytes))) {
+			var bytes = getBuffer(xzUrl);
+			try (var stream = new XZInputStream(LocalRepo.asStream(bytes))) {
 				return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
 			}
 		} catch (NotFoundException e) {
 			// no problem, just keep trying
 		}
 		try {
-			var bytes = getBytes(jarUrl);
+			var bytes = getBuffer(jarUrl);
 			var unwantedEntries = new ArrayList<String>();
-			try (var zipStream = new ZipInputStream(new ByteArrayInputStream(bytes))) {
+			try (var zipStream = new ZipInputStream(LocalRepo.asStream(bytes))) {
 				ZipEntry entry;
 				while ((entry = zipStream.getNextEntry()) != null) {
 					if (entry.getName().equals(metadataTarget)) {
@@ -322,7 +413,7 @@ public class P2Client implements AutoCloseable {
 			// no problem, just keep trying
 		}
 		try {
-			return new String(getBytes(rawUrl), StandardCharsets.UTF_8);
+			return StandardCharsets.UTF_8.decode(getBuffer(rawUrl)).toString();
 		} catch (NotFoundException e) {
 			// no problem, just tell what we tried
 		}
@@ -356,23 +447,133 @@ public class P2Client implements AutoCloseable {
 				});
 	}
 
-	private static void parseContentXml(P2Session session, Folder folder, String content)
+	static void parseContentXml(P2Session session, Folder folder, String content)
 			throws Exception {
+		List<UnitStore.Xml> stored;
+		if (session.store != null) {
+			stored = session.store.append(content.getBytes(StandardCharsets.UTF_8));
+		} else if (session.isLazy()) {
+			var bytes = content.getBytes(StandardCharsets.UTF_8);
+			var ranges = UnitStore.unitRanges(bytes);
+			stored = ranges == null ? null : UnitStore.slices(ByteBuffer.wrap(bytes), ranges);
+		} else {
+			stored = null;
+		}
+		if (session.isLazy() && stored != null && indexContentXml(session, folder, content, stored)) {
+			return;
+		}
 		parseDocument(
 				content,
 				doc -> {
 					var unitNodes =
 							doc.getDocumentElement().getElementsByTagName("units").item(0).getChildNodes();
+					var units = new ArrayList<Node>();
 					for (int i = 0; i < unitNodes.getLength(); ++i) {
 						Node node = unitNodes.item(i);
 						if ("unit".equals(node.getNodeName())) {
-							session.units.add(new P2Unit(session, folder, node));
+							units.add(node);
+						}
+					}
+					// if we couldn't find the exact same units in the raw bytes, they stay on the heap
+					boolean useStore = stored != null && stored.size() == units.size();
+					for (int i = 0; i < units.size(); ++i) {
+						var node = units.get(i);
+						var id = node.getAttributes().getNamedItem("id").getNodeValue();
+						var version =
+								Version.parseVersion(node.getAttributes().getNamedItem("version").getNodeValue());
+						if (session.addSourceIfPresent(id, version, folder)) {
+							continue;
 						}
+						var xml = useStore ? stored.get(i) : UnitStore.onHeap(node);
+						session.add(new P2Unit(session, folder, node, xml));
 					}
 					return null;
 				});
 	}
 
+	/**
+	 * The id, version, and provided capabilities (namespace, name, version) of a unit, read by {@link
+	 * #indexContentXml}.
+	 */
+	private static class IndexedUnit {
+		final String id;
+		final String version;
+		final List<String> provides = new ArrayList<>();
+
+		IndexedUnit(String id, String version) {
+			this.id = id;
+			this.version = version;
+		}
+	}
+
+	/**
+	 * Streams through the given {@code content.xml} reading only what is needed to find a unit, and
+	 * adds a lazy {@link P2Unit} for each one. Returns false without changing the session if the
+	 * units don't line up exactly with the given slices, in which case the caller should parse
+	 * eagerly.
+	 */
+	private static boolean indexContentXml(
+			P2Session session, Folder folder, String content, List<UnitStore.Xml> slices)
+			throws XMLStreamException {
+		var indexed = new ArrayList<IndexedUnit>(slices.size());
+		var reader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(content));
+		try {
+			int depth = 0;
+			int unitsDepth = -1;
+			int unitDepth = -1;
+			IndexedUnit unit = null;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					++depth;
+					var name = reader.getLocalName();
+					if (unitsDepth == -1 && "units".equals(name)) {
+						unitsDepth = depth;
+					} else if (depth == unitsDepth + 1 && "unit".equals(name)) {
+						unit =
+								new IndexedUnit(
+										reader.getAttributeValue(null, "id"),
+										reader.getAttributeValue(null, "version"));
+						unitDepth = depth;
+						indexed.add(unit);
+					} else if (unit != null && depth == unitDepth + 2 && "provided".equals(name)) {
+						var namespace = reader.getAttributeValue(null, "namespace");
+						if (!P2Unit.EXCLUDED_REQUIRE_PROVIDE_NAMESPACES.contains(namespace)) {
+							unit.provides.add(namespace);
+							unit.provides.add(reader.getAttributeValue(null, "name"));
+							unit.provides.add(reader.getAttributeValue(null, "version"));
+						}
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					if (depth == unitDepth) {
+						unit = null;
+						unitDepth = -1;
+					}
+					--depth;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		if (indexed.size() != slices.size()) {
+			return false;
+		}
+		for (int i = 0; i < indexed.size(); ++i) {
+			var info = indexed.get(i);
+			var version = Version.parseVersion(info.version);
+			if (session.addSourceIfPresent(info.id, version, folder)) {
+				continue;
+			}
+			var unit = new P2Unit(session, folder, info.id, version, slices.get(i));
+			session.add(unit);
+			for (int p = 0; p < info.provides.size(); p += 3) {
+				var providedVersion = P2Session.parseVersion(info.provides.get(p + 2), unit.version);
+				session.provides(info.provides.get(p), info.provides.get(p + 1), providedVersion, unit);
+			}
+		}
+		return true;
+	}
+
 	private static <T> T parseDocument(String content, Function<Document, T> parser)
 			throws Exception {
 		var dbf = DocumentBuilderFactory.newInstance();
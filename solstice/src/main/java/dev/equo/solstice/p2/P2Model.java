@@ -14,7 +14,9 @@
 package dev.equo.solstice.p2;
 
 import com.diffplug.common.swt.os.SwtPlatform;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
@@ -100,13 +102,24 @@ public class P2Model {
 	}
 
 	public P2Query queryRaw(P2ClientCache cachingPolicy) throws Exception {
-		validateFilters();
-		var session = new P2Session();
+		return queryRaw(cachingPolicy, true);
+	}
+
+	/**
+	 * Runs the query against a session which only materializes the units that {@link
+	 * P2Query#install(String)} visits, unless {@code materializeLazily} is false, which is better if
+	 * the caller is going to look at every unit anyway (e.g. {@link P2Query#addAllUnits()}).
+	 */
+	public P2Query queryRaw(P2ClientCache cachingPolicy, boolean materializeLazily)
+			throws Exception {
 		try (var client = new P2Client(cachingPolicy)) {
-			for (var repo : p2repo) {
-				session.populateFrom(client, repo);
-			}
+			return queryRaw(client, materializeLazily);
 		}
+	}
+
+	private P2Query queryRaw(P2Client client, boolean materializeLazily) throws Exception {
+		validateFilters();
+		var session = P2Session.populatedFrom(client, p2repo, materializeLazily);
 		var query = session.query();
 		for (var filter : filters.values()) {
 			filter.exclude.forEach(query::exclude);
@@ -133,11 +146,16 @@ public class P2Model {
 			}
 		}
 		try {
-			var query = queryRaw(clientCachingPolicy);
+			P2Query query;
+			Map<String, String> metadataDigests;
+			try (var client = new P2Client(clientCachingPolicy)) {
+				query = queryRaw(client, true);
+				metadataDigests = client.metadataDigests();
+			}
 			var queryResult = new P2QueryResult(query, clientCachingPolicy, this.useMavenCentral);
 			if (queryCachingPolicy.allowWrite()) {
 				QueryCacheOnDisk onDisk = new QueryCacheOnDisk(CacheLocations.p2Queries(), this);
-				onDisk.put(queryResult);
+				onDisk.put(queryResult, metadataDigests);
 			}
 			return queryResult;
 		} catch (Exception e) {
@@ -145,6 +163,34 @@ public class P2Model {
 		}
 	}
 
+	/**
+	 * Returns the result which is pinned in the given lock file, downloading only its jars, with no
+	 * p2 metadata and no resolution. If the lock file doesn't exist yet, or {@code updateLock} is
+	 * true, then this model is resolved and the lock file is (re)written. Throws an exception if the
+	 * lock file was written for a different model.
+	 */
+	public P2QueryResult queryLocked(
+			P2ClientCache clientCachingPolicy, File lockFile, boolean updateLock) {
+		try {
+			var lock = new QueryLockFile(lockFile, this);
+			if (!updateLock) {
+				var locked = lock.read(clientCachingPolicy);
+				if (locked != null) {
+					return locked;
+				}
+			}
+			P2Query query;
+			try (var client = new P2Client(clientCachingPolicy)) {
+				query = queryRaw(client, true);
+			}
+			var queryResult = new P2QueryResult(query, clientCachingPolicy, this.useMavenCentral);
+			lock.write(queryResult, query.getJarsNotOnMavenCentral(this.useMavenCentral));
+			return queryResult;
+		} catch (Exception e) {
+			throw Unchecked.wrap(e);
+		}
+	}
+
 	/** Ensures there are no conflicts between the existing filters. */
 	public void validateFilters() {
 		var entryList = new ArrayList<>(filters.entrySet());
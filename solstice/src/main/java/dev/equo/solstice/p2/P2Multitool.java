@@ -13,6 +13,7 @@
  *******************************************************************************/
 package dev.equo.solstice.p2;
 
+import java.util.ArrayList;
 import java.util.List;
 import javax.xml.transform.TransformerException;
 
@@ -25,6 +26,7 @@ public class P2Multitool {
 	public P2Multitool.All all;
 	public String detail;
 	public String raw;
+	public String search;
 
 	public boolean argsAreValid() {
 		int numArgs = 0;
@@ -35,6 +37,7 @@ public class P2Multitool {
 		if (all != null) ++numArgs;
 		if (detail != null) ++numArgs;
 		if (raw != null) ++numArgs;
+		if (search != null) ++numArgs;
 		return numArgs == 1;
 	}
 
@@ -42,7 +45,9 @@ public class P2Multitool {
 		if (request) {
 			request(model);
 		} else {
-			var query = model.queryRaw(caching);
+			// `--all` and `--search` look at every unit, so there's nothing to gain from materializing
+			// lazily
+			var query = model.queryRaw(caching, all == null && search == null);
 			if (installed) {
 				installed(query);
 			} else if (problems) {
@@ -55,6 +60,8 @@ public class P2Multitool {
 				detail(query, detail);
 			} else if (raw != null) {
 				raw(query, raw);
+			} else if (search != null) {
+				search(query, search);
 			} else {
 				throw new UnsupportedOperationException("Programming error");
 			}
@@ -123,6 +130,18 @@ public class P2Multitool {
 		System.out.println(ConsoleTable.mavenStatus(query.getJars(), format));
 	}
 
+	private void search(P2Query query, String search) {
+		// only show the latest version of each id, `--detail` can show the rest
+		var latestOfEach = new ArrayList<P2Unit>();
+		for (var unit : query.searchAllAvailableUnits(search)) {
+			if (latestOfEach.isEmpty() || !latestOfEach.get(latestOfEach.size() - 1).id.equals(unit.id)) {
+				latestOfEach.add(unit);
+			}
+		}
+		System.out.println(latestOfEach.size() + " unit(s) match " + search);
+		System.out.println(ConsoleTable.nameAndDescription(latestOfEach, format));
+	}
+
 	private void raw(P2Query query, String raw) throws TransformerException {
 		var allAvailable = query.getAllAvailableUnitsById(raw);
 		for (var unit : allAvailable) {
@@ -0,0 +1,482 @@
+/*******************************************************************************
+ * Copyright (c) 2022-2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice.p2;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.Nullable;
+import okhttp3.OkHttpClient;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A read-through caching proxy of upstream p2 repositories, so that a team or a CI fleet downloads
+ * each metadata file and jar from upstream only once. Start it with
+ *
+ * <pre>
+ * java -cp solstice.jar:okhttp.jar:... dev.equo.solstice.p2.P2Proxy --port 8080 --bind 0.0.0.0
+ *     --allow https://download.eclipse.org/
+ * </pre>
+ *
+ * and point clients at it with {@code -Dp2proxy=http://host:8080/}. The upstream url {@code
+ * https://download.eclipse.org/some/repo/} is served at {@code
+ * http://host:8080/https/download.eclipse.org/some/repo/}. Only upstream urls which start with one
+ * of the allowed prefixes are fetched, so that the proxy can't be used to reach arbitrary hosts.
+ *
+ * <p>Metadata is cached in the proxy's own {@link OfflineCache} and jars in its own bundle pool, so
+ * the proxy can run alongside regular clients. Responses support {@code Range} requests and
+ * conditional GETs ({@code If-None-Match}, {@code If-Modified-Since} and {@code If-Range}).
+ */
+public class P2Proxy implements AutoCloseable {
+	/** The system property which makes every {@link P2Client} in this JVM go through a proxy. */
+	public static final String PROPERTY = "p2proxy";
+
+	/**
+	 * Returns the proxy url from {@link #PROPERTY} with a trailing slash, or null if it isn't set.
+	 */
+	static @Nullable String forClients() {
+		var proxy = System.getProperty(PROPERTY);
+		if (proxy == null || proxy.isEmpty()) {
+			return null;
+		}
+		return proxy.endsWith("/") ? proxy : proxy + "/";
+	}
+
+	/** Returns the url at which the given proxy serves the given upstream url. */
+	public static String proxied(String proxyUrl, String upstreamUrl) {
+		int colonSlashSlash = upstreamUrl.indexOf("://");
+		if (colonSlashSlash == -1) {
+			throw new IllegalArgumentException("Expected an absolute url, was " + upstreamUrl);
+		}
+		return proxyUrl
+				+ upstreamUrl.substring(0, colonSlashSlash)
+				+ "/"
+				+ upstreamUrl.substring(colonSlashSlash + "://".length());
+	}
+
+	/**
+	 * The inverse of {@link #proxied}, returns null if the path isn't a proxied url, or if it has
+	 * {@code ..} segments, backslashes, or encoded dots and slashes which could escape its
+	 * repository.
+	 */
+	static @Nullable String upstream(String path) {
+		if (!path.startsWith("/") || path.indexOf('\\') != -1) {
+			return null;
+		}
+		var lowercase = path.toLowerCase(Locale.ROOT);
+		if (lowercase.contains("%2e") || lowercase.contains("%2f") || lowercase.contains("%5c")) {
+			return null;
+		}
+		for (var segment : path.split("/")) {
+			if (segment.equals("..") || segment.equals(".")) {
+				return null;
+			}
+		}
+		int slash = path.indexOf('/', 1);
+		if (slash == -1) {
+			return null;
+		}
+		var scheme = path.substring(1, slash);
+		if (!scheme.equals("http") && !scheme.equals("https")) {
+			return null;
+		}
+		return scheme + "://" + path.substring(slash + 1);
+	}
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final OfflineCache metadataCache;
+	private final JarCache jarCache;
+	private final OkHttpClient upstreamClient = new OkHttpClient.Builder().build();
+	private final P2ClientCache cachingPolicy;
+	private final List<String> allowedUpstreams;
+	private final ConcurrentHashMap<String, InFlight> inFlight = new ConcurrentHashMap<>();
+
+	private P2Proxy(
+			InetSocketAddress address,
+			File p2data,
+			P2ClientCache cachingPolicy,
+			List<String> allowedUpstreams)
+			throws IOException {
+		this.cachingPolicy = cachingPolicy;
+		this.allowedUpstreams = new ArrayList<>(allowedUpstreams.size());
+		for (var allowed : allowedUpstreams) {
+			// a prefix without a trailing slash would also allow https://host.evil.example/
+			this.allowedUpstreams.add(allowed.endsWith("/") ? allowed : allowed + "/");
+		}
+		this.metadataCache = new OfflineCache(new File(p2data, "proxy-metadata"));
+		this.jarCache = new JarCache(new File(p2data, "proxy-bundle-pool"), cachingPolicy, null);
+		this.server = HttpServer.create(address, 0);
+		this.executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+		server.start();
+	}
+
+	/**
+	 * Starts a proxy on the given address, which caches into the given p2 data directory (e.g. {@link
+	 * CacheLocations#p2data()}) according to the given caching policy. It only fetches upstream urls
+	 * which start with one of the given prefixes, such as {@code https://download.eclipse.org/}.
+	 */
+	public static P2Proxy start(
+			InetSocketAddress address,
+			File p2data,
+			P2ClientCache cachingPolicy,
+			List<String> allowedUpstreams)
+			throws IOException {
+		return new P2Proxy(address, p2data, cachingPolicy, allowedUpstreams);
+	}
+
+	/** The url which clients should use as {@link #PROPERTY}. */
+	public String url() {
+		var address = server.getAddress();
+		return "http://" + address.getHostString() + ":" + address.getPort() + "/";
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			var method = exchange.getRequestMethod();
+			boolean isHead = method.equals("HEAD");
+			if (!isHead && !method.equals("GET")) {
+				exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			var upstream = upstream(exchange.getRequestURI().getRawPath());
+			if (upstream == null) {
+				sendText(exchange, 400, "Expected /<scheme>/<host>/<path>, see P2Proxy.proxied");
+				return;
+			}
+			if (!isAllowed(upstream)) {
+				sendText(exchange, 403, "This proxy doesn't serve " + upstream);
+				return;
+			}
+			File file;
+			String etag;
+			try {
+				if (isJar(upstream)) {
+					file = fetchJar(upstream);
+					etag = "W/\"" + file.length() + "-" + file.lastModified() + "\"";
+				} else {
+					var digest = fetchMetadata(upstream);
+					if (digest == null) {
+						sendText(exchange, 404, upstream);
+						return;
+					}
+					file = metadataContent(upstream);
+					etag = "\"" + digest + "\"";
+				}
+			} catch (IOException | RuntimeException e) {
+				// the details can include local paths, so they go to the log rather than to the client
+				LoggerFactory.getLogger(P2Proxy.class).warn("Unable to fetch " + upstream, e);
+				sendText(exchange, 502, "Unable to fetch " + upstream);
+				return;
+			}
+			serveFile(exchange, file, etag, isHead);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static boolean isJar(String url) {
+		return url.endsWith(".jar") && url.lastIndexOf("/plugins/") != -1;
+	}
+
+	private boolean isAllowed(String upstream) {
+		for (var allowed : allowedUpstreams) {
+			if (upstream.startsWith(allowed)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** A lock per url, which is removed once nobody holds it or waits for it. */
+	private static class InFlight {
+		int users;
+	}
+
+	private interface Fetch<T> {
+		T fetch() throws IOException;
+	}
+
+	private <T> T whileLocked(String url, Fetch<T> fetch) throws IOException {
+		var lock =
+				inFlight.compute(
+						url,
+						(unused, existing) -> {
+							var result = existing == null ? new InFlight() : existing;
+							++result.users;
+							return result;
+						});
+		try {
+			synchronized (lock) {
+				return fetch.fetch();
+			}
+		} finally {
+			inFlight.computeIfPresent(url, (unused, existing) -> --existing.users == 0 ? null : existing);
+		}
+	}
+
+	private File fetchJar(String url) throws IOException {
+		int plugins = url.lastIndexOf("/plugins/");
+		var repoUrl = url.substring(0, plugins + 1);
+		var filename = url.substring(plugins + "/plugins/".length());
+		if (filename.indexOf('/') != -1) {
+			throw new IllegalArgumentException("Expected a jar directly within plugins/, was " + url);
+		}
+		return whileLocked(url, () -> jarCache.download(List.of(repoUrl), filename, null));
+	}
+
+	private File metadataContent(String url) {
+		return new File(new File(metadataCache.rootDir, OfflineCache.filenameSafe(url)), "content");
+	}
+
+	/** Makes sure the given metadata is cached, and returns its digest, or null if it is a 404. */
+	private @Nullable String fetchMetadata(String url) throws IOException {
+		return whileLocked(url, () -> fetchMetadataLocked(url));
+	}
+
+	private @Nullable String fetchMetadataLocked(String url) throws IOException {
+		if (cachingPolicy.tryOfflineFirst()) {
+			var cached = metadataCache.get(url);
+			if (cached != null) {
+				return OfflineCache.is404(cached) ? null : metadataCache.digest(url);
+			}
+		}
+		if (!cachingPolicy.networkAllowed()) {
+			throw new IllegalStateException("P2Proxy is in offline mode but has no cache for " + url);
+		}
+		try (var response = upstreamClient.newCall(P2Client.buildRequest(url)).execute()) {
+			if (response.code() == 404) {
+				metadataCache.put404(url);
+				return null;
+			} else if (response.code() != 200) {
+				throw new IOException("Received " + response.code() + " from " + url);
+			}
+			metadataCache.put(url, response.body().bytes());
+			return metadataCache.digest(url);
+		} catch (UnknownHostException e) {
+			var cached = metadataCache.get(url);
+			if (cached == null) {
+				throw e;
+			}
+			return OfflineCache.is404(cached) ? null : metadataCache.digest(url);
+		}
+	}
+
+	private static final DateTimeFormatter HTTP_DATE =
+			DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+	private static void serveFile(HttpExchange exchange, File file, String etag, boolean isHead)
+			throws IOException {
+		var request = exchange.getRequestHeaders();
+		var response = exchange.getResponseHeaders();
+		long length = file.length();
+		long lastModifiedSeconds = file.lastModified() / 1000;
+		response.set("ETag", etag);
+		response.set("Last-Modified", HTTP_DATE.format(Instant.ofEpochSecond(lastModifiedSeconds)));
+		response.set("Accept-Ranges", "bytes");
+		if (isNotModified(request, etag, lastModifiedSeconds)) {
+			exchange.sendResponseHeaders(304, -1);
+			return;
+		}
+		long start = 0;
+		long end = length - 1;
+		int status = 200;
+		var range = request.getFirst("Range");
+		var ifRange = request.getFirst("If-Range");
+		if (range != null && (ifRange == null || strongEquals(ifRange, etag))) {
+			long[] parsed = parseRange(range, length);
+			if (parsed == UNSATISFIABLE) {
+				response.set("Content-Range", "bytes */" + length);
+				exchange.sendResponseHeaders(416, -1);
+				return;
+			} else if (parsed != null) {
+				start = parsed[0];
+				end = parsed[1];
+				status = 206;
+				response.set("Content-Range", "bytes " + start + "-" + end + "/" + length);
+			}
+		}
+		long count = end - start + 1;
+		if (isHead) {
+			response.set("Content-Length", Long.toString(count));
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+		exchange.sendResponseHeaders(status, count == 0 ? -1 : count);
+		try (var input = new RandomAccessFile(file, "r");
+				OutputStream output = exchange.getResponseBody()) {
+			input.seek(start);
+			var buffer = new byte[64 * 1024];
+			while (count > 0) {
+				int read = input.read(buffer, 0, (int) Math.min(buffer.length, count));
+				if (read == -1) {
+					break;
+				}
+				output.write(buffer, 0, read);
+				count -= read;
+			}
+		}
+	}
+
+	private static boolean isNotModified(Headers request, String etag, long lastModifiedSeconds) {
+		var ifNoneMatch = request.getFirst("If-None-Match");
+		if (ifNoneMatch != null) {
+			for (var candidate : ifNoneMatch.split(",")) {
+				var trimmed = candidate.trim();
+				if (trimmed.equals("*") || weakEquals(trimmed, etag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		var ifModifiedSince = request.getFirst("If-Modified-Since");
+		if (ifModifiedSince != null) {
+			try {
+				var since = Instant.from(HTTP_DATE.parse(ifModifiedSince)).getEpochSecond();
+				return lastModifiedSeconds <= since;
+			} catch (DateTimeParseException e) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/** {@code If-Range} requires the strong comparison, so a weak etag never matches. */
+	private static boolean strongEquals(String a, String b) {
+		return !a.startsWith("W/") && a.equals(b);
+	}
+
+	private static boolean weakEquals(String a, String b) {
+		return stripWeak(a).equals(stripWeak(b));
+	}
+
+	private static String stripWeak(String etag) {
+		return etag.startsWith("W/") ? etag.substring(2) : etag;
+	}
+
+	private static final long[] UNSATISFIABLE = new long[0];
+
+	/**
+	 * Parses a single {@code bytes=} range into an inclusive {@code [start, end]}. Returns null if
+	 * the whole file should be served instead (multiple ranges or a header we don't understand), and
+	 * {@link #UNSATISFIABLE} if the range is outside the file.
+	 */
+	static @Nullable long[] parseRange(String header, long length) {
+		if (!header.startsWith("bytes=") || header.indexOf(',') != -1) {
+			return null;
+		}
+		var spec = header.substring("bytes=".length()).trim();
+		int dash = spec.indexOf('-');
+		if (dash == -1) {
+			return null;
+		}
+		try {
+			long start, end;
+			if (dash == 0) {
+				long suffix = Long.parseLong(spec.substring(1));
+				if (suffix == 0) {
+					return UNSATISFIABLE;
+				}
+				start = Math.max(0, length - suffix);
+				end = length - 1;
+			} else {
+				start = Long.parseLong(spec.substring(0, dash));
+				end = dash == spec.length() - 1 ? length - 1 : Long.parseLong(spec.substring(dash + 1));
+				end = Math.min(end, length - 1);
+			}
+			if (start >= length || start > end) {
+				return UNSATISFIABLE;
+			}
+			return new long[] {start, end};
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+		var bytes = text.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (var output = exchange.getResponseBody()) {
+			output.write(bytes);
+		}
+	}
+
+	/**
+	 * Runs a proxy until the process is killed. Arguments are {@code --port <port>} (default 8080),
+	 * {@code --bind <host>} (default loopback only), {@code --allow <upstream url prefix>} (may be
+	 * repeated, default {@code https://download.eclipse.org/}), and {@code --offline}.
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = 8080;
+		String bind = null;
+		var allowed = new ArrayList<String>();
+		var cachingPolicy = P2ClientCache.PREFER_OFFLINE;
+		for (int i = 0; i < args.length; ++i) {
+			switch (args[i]) {
+				case "--port":
+					port = Integer.parseInt(args[++i]);
+					break;
+				case "--bind":
+					bind = args[++i];
+					break;
+				case "--allow":
+					allowed.add(args[++i]);
+					break;
+				case "--offline":
+					cachingPolicy = P2ClientCache.OFFLINE;
+					break;
+				default:
+					throw new IllegalArgumentException(
+							"Unknown argument " + args[i] + ", expected --port, --bind, --allow, or --offline");
+			}
+		}
+		if (allowed.isEmpty()) {
+			allowed.add("https://download.eclipse.org/");
+		}
+		var address =
+				bind == null
+						? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+						: new InetSocketAddress(bind, port);
+		var proxy = start(address, CacheLocations.p2data(), cachingPolicy, allowed);
+		System.out.println("P2Proxy serving " + CacheLocations.p2data() + " at " + proxy.url());
+	}
+}
@@ -15,13 +15,15 @@ package dev.equo.solstice.p2;
 
 import com.diffplug.common.swt.os.SwtPlatform;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.stream.Collectors;
 
 /**
  * Follows the dependency information of a set of {@link dev.equo.solstice.p2.P2Unit} so that they
@@ -105,7 +107,81 @@ public class P2Query {
 
 	/** Resolves the given P2Unit by eagerly traversing all its dependencies. */
 	public void install(String idToResolve) {
-		install(session.getUnitById(idToResolve));
+		var root = session.getUnitById(idToResolve);
+		if (addedAllUnits) {
+			install(root);
+			return;
+		}
+		var closure = session.closure(root, filterKey(), () -> closureOf(root));
+		if (!closure.mergeInto(this)) {
+			install(root);
+		}
+	}
+
+	private boolean addedAllUnits = false;
+
+	/** Uniquely identifies the exclusions and filter properties of this query. */
+	private String filterKey() {
+		return exclude + "\n" + excludePrefix + "\n" + excludeSuffix + "\n" + filterProps;
+	}
+
+	/** Calculates the closure of the given root in a fresh query with the same filters. */
+	private Closure closureOf(P2Unit root) {
+		var fresh = new P2Query(session);
+		fresh.exclude.addAll(exclude);
+		fresh.excludePrefix.addAll(excludePrefix);
+		fresh.excludeSuffix.addAll(excludeSuffix);
+		fresh.filterProps.putAll(filterProps);
+		fresh.install(root);
+		return new Closure(fresh);
+	}
+
+	/**
+	 * Everything that installing a single root into an empty query produces. Installing several
+	 * roots is the union of their closures, so a closure can be memoized in the {@link P2Session}
+	 * and merged into any query with the same filters.
+	 */
+	static class Closure {
+		private final List<P2Unit> installed;
+		private final Map<P2Session.Requirement, Set<P2Unit>> optionalSoMaybeNotInstalled;
+		private final Map<P2Session.Requirement, Set<P2Unit>> unmetRequirements;
+		private final Set<P2Session.Requirement> ambiguousRequirements;
+
+		private Closure(P2Query query) {
+			installed = List.copyOf(query.installed.values());
+			optionalSoMaybeNotInstalled = query.optionalSoMaybeNotInstalled;
+			unmetRequirements = query.unmetRequirements;
+			ambiguousRequirements = query.ambiguousRequirements;
+		}
+
+		/**
+		 * Merges this closure into the given query. Returns false without changing anything if a
+		 * different version of some unit has already been installed, in which case the union is not the
+		 * same as a traversal and the caller must traverse.
+		 */
+		private boolean mergeInto(P2Query query) {
+			for (var unit : installed) {
+				var existing = query.installed.get(unit.id);
+				if (existing != null && existing != unit) {
+					return false;
+				}
+			}
+			for (var unit : installed) {
+				query.installed.putIfAbsent(unit.id, unit);
+			}
+			mergeAll(optionalSoMaybeNotInstalled, query.optionalSoMaybeNotInstalled);
+			mergeAll(unmetRequirements, query.unmetRequirements);
+			query.ambiguousRequirements.addAll(ambiguousRequirements);
+			return true;
+		}
+
+		private static void mergeAll(
+				Map<P2Session.Requirement, Set<P2Unit>> from,
+				TreeMap<P2Session.Requirement, Set<P2Unit>> into) {
+			for (var entry : from.entrySet()) {
+				into.computeIfAbsent(entry.getKey(), unused -> new TreeSet<>()).addAll(entry.getValue());
+			}
+		}
 	}
 
 	/** Returns the unit, if any, which has been installed at the given id. */
@@ -118,7 +194,17 @@ public class P2Query {
 	 * versions of the same id.
 	 */
 	public List<P2Unit> getAllAvailableUnitsById(String id) {
-		return session.units.stream().filter(u -> u.id.equals(id)).collect(Collectors.toList());
+		return new ArrayList<>(session.getUnitsById(id));
+	}
+
+	/**
+	 * Returns every unit available in the parent session whose id starts with the given text, or
+	 * whose name or description has words starting with every word of the text. Text of the form
+	 * {@code pkg:some.package} instead returns the units which provide a package with that prefix.
+	 * Ignores the filters of this query, the same as {@link #getAllAvailableUnitsById(String)}.
+	 */
+	public List<P2Unit> searchAllAvailableUnits(String text) {
+		return new ArrayList<>(session.searchIndex().search(text));
 	}
 
 	private boolean addUnlessExcludedOrAlreadyPresent(P2Unit unit) {
@@ -135,7 +221,7 @@ public class P2Query {
 		if (exclude.contains(unit.id)) {
 			return false;
 		}
-		if (!filterProps.isEmpty() && unit.filter != null && !unit.filter.matches(filterProps)) {
+		if (!filterProps.isEmpty() && unit.filter() != null && !unit.filter().matches(filterProps)) {
 			return false;
 		}
 		return installed.putIfAbsent(unit.id, unit) == null;
@@ -149,11 +235,14 @@ public class P2Query {
 		if (!addUnlessExcludedOrAlreadyPresent(toResolve)) {
 			return;
 		}
-		for (var requirement : toResolve.requires) {
+		for (var requirement : toResolve.requires()) {
 			if (!reqMatchesFilter(requirement)) {
 				continue;
 			}
 			if (requirement.isOptional()) {
+				if (requirement.isSatisfiedByJre()) {
+					continue;
+				}
 				optionalSoMaybeNotInstalled
 						.computeIfAbsent(requirement.getRoot(), unused -> new TreeSet<>())
 						.add(toResolve);
@@ -161,17 +250,30 @@ public class P2Query {
 			}
 			if (requirement.hasOnlyOneProvider()) {
 				install(requirement.getOnlyProvider());
+			} else if (requirement.isSatisfiedByJre()) {
+				// special handling for noise like "java.package:java.lang" is provided by every JRE
+				continue;
 			} else {
 				var units = requirement.getProviders();
 				if (units.isEmpty()) {
 					addUnmetRequirement(requirement, toResolve);
-				} else {
-					// special handling for noise like "java.package:java.lang" is provided by every JRE
-					if (units.stream().anyMatch(u -> u.id.equals("a.jre.javase"))) {
-						continue;
-					}
+					continue;
+				}
+				var inRange = requirement.getProvidersInRange();
+				if (inRange.isEmpty()) {
+					// nothing satisfies the range, so fall back to the first provider
 					install(units.get(0));
 					ambiguousRequirements.add(requirement);
+					continue;
+				}
+				// the greatest version in range wins, it's only ambiguous if different units compete
+				var best = inRange.get(0);
+				install(best);
+				for (var other : inRange) {
+					if (!other.id.equals(best.id)) {
+						ambiguousRequirements.add(requirement);
+						break;
+					}
 				}
 			}
 		}
@@ -203,23 +305,56 @@ public class P2Query {
 
 	/** Returns all units which have the given property set to the given value. */
 	public List<P2Unit> getUnitsWithProperty(String key, String value) {
-		List<P2Unit> matches = new ArrayList<>();
-		for (var unit : installed.values()) {
-			if (Objects.equals(value, unit.properties.get(key))) {
-				matches.add(unit);
+		if (value == null) {
+			List<P2Unit> matches = new ArrayList<>();
+			for (var unit : installed.values()) {
+				if (unit.properties().get(key) == null) {
+					matches.add(unit);
+				}
 			}
+			return matches;
 		}
-		return matches;
+		return new ArrayList<>(classification().withProperty(key, value));
 	}
 
 	/** Returns all units which have the given property set to the given value. */
 	public List<P2Unit> getUnitsWithProperty1or2(
 			String key1, String value1, String key2, String value2) {
-		List<P2Unit> matches = new ArrayList<>();
-		for (var unit : installed.values()) {
-			if (Objects.equals(unit.properties.get(key1), value1)
-					|| Objects.equals(unit.properties.get(key2), value2)) {
-				matches.add(unit);
+		if (value1 == null || value2 == null) {
+			List<P2Unit> matches = new ArrayList<>();
+			for (var unit : installed.values()) {
+				if (Objects.equals(unit.properties().get(key1), value1)
+						|| Objects.equals(unit.properties().get(key2), value2)) {
+					matches.add(unit);
+				}
+			}
+			return matches;
+		}
+		var classification = classification();
+		var first = classification.withProperty(key1, value1);
+		var second = classification.withProperty(key2, value2);
+		// both lists are sorted by id, and each id is installed at most once, so merge them
+		List<P2Unit> matches = new ArrayList<>(first.size() + second.size());
+		int i = 0, j = 0;
+		while (i < first.size() || j < second.size()) {
+			if (j == second.size()) {
+				matches.add(first.get(i++));
+			} else if (i == first.size()) {
+				matches.add(second.get(j++));
+			} else {
+				var a = first.get(i);
+				var b = second.get(j);
+				int compare = a.id.compareTo(b.id);
+				if (compare <= 0) {
+					matches.add(a);
+					++i;
+					if (compare == 0) {
+						++j;
+					}
+				} else {
+					matches.add(b);
+					++j;
+				}
 			}
 		}
 		return matches;
@@ -229,11 +364,8 @@ public class P2Query {
 	public List<String> getJarsOnMavenCentral(boolean useMavenCentral) {
 		var mavenCoords = new ArrayList<String>();
 		if (useMavenCentral) {
-			for (var unit : getJars()) {
-				var repoStatus = RepoStatus.forUnit(unit);
-				if (repoStatus.isOnMavenCentral()) {
-					mavenCoords.add(repoStatus.coordinate());
-				}
+			for (var unit : classification().jarsOnMavenCentral()) {
+				mavenCoords.add(RepoStatus.forUnit(unit).coordinate());
 			}
 		}
 		return mavenCoords;
@@ -241,18 +373,79 @@ public class P2Query {
 
 	/** Returns all jars which are not on maven central. */
 	public List<P2Unit> getJarsNotOnMavenCentral(boolean useMavenCentral) {
-		var notOnMaven = new ArrayList<P2Unit>();
-		for (var unit : getJars()) {
-			var repoStatus = RepoStatus.forUnit(unit);
-			if (!repoStatus.isOnMavenCentral() || !useMavenCentral) {
-				notOnMaven.add(unit);
+		if (!useMavenCentral) {
+			return getJars();
+		}
+		return new ArrayList<>(classification().jarsNotOnMavenCentral());
+	}
+
+	private Classification classification;
+
+	/**
+	 * Returns the index of the installed units, rebuilding it if anything has been installed since it
+	 * was built. Units are only ever added to a query, so the size is enough to tell.
+	 */
+	private Classification classification() {
+		if (classification == null || classification.numInstalled != installed.size()) {
+			classification = new Classification(installed.values());
+		}
+		return classification;
+	}
+
+	/** Indexes the installed units by their property values and by where their jars are hosted. */
+	private static class Classification {
+		private final int numInstalled;
+		private final Map<String, Map<String, List<P2Unit>>> byProperty = new HashMap<>();
+		private List<P2Unit> jarsOnMavenCentral, jarsNotOnMavenCentral;
+
+		Classification(Collection<P2Unit> installed) {
+			numInstalled = installed.size();
+			for (var unit : installed) {
+				for (var property : unit.properties().entrySet()) {
+					byProperty
+							.computeIfAbsent(property.getKey(), unused -> new HashMap<>())
+							.computeIfAbsent(property.getValue(), unused -> new ArrayList<>())
+							.add(unit);
+				}
+			}
+		}
+
+		List<P2Unit> jarsOnMavenCentral() {
+			partitionJars();
+			return jarsOnMavenCentral;
+		}
+
+		List<P2Unit> jarsNotOnMavenCentral() {
+			partitionJars();
+			return jarsNotOnMavenCentral;
+		}
+
+		private void partitionJars() {
+			if (jarsOnMavenCentral != null) {
+				return;
+			}
+			jarsOnMavenCentral = new ArrayList<>();
+			jarsNotOnMavenCentral = new ArrayList<>();
+			for (var jar : withProperty(P2Unit.ARTIFACT_CLASSIFIER, P2Unit.ARTIFACT_CLASSIFIER_BUNDLE)) {
+				if (RepoStatus.forUnit(jar).isOnMavenCentral()) {
+					jarsOnMavenCentral.add(jar);
+				} else {
+					jarsNotOnMavenCentral.add(jar);
+				}
 			}
 		}
-		return notOnMaven;
+
+		/** Returns the units with the given property value, sorted by id. */
+		List<P2Unit> withProperty(String key, String value) {
+			return byProperty
+					.getOrDefault(key, Collections.emptyMap())
+					.getOrDefault(value, Collections.emptyList());
+		}
 	}
 
 	/** Adds every unit in the session, subject to the query filters. */
 	public void addAllUnits() {
+		addedAllUnits = true;
 		session.units.forEach(this::addUnlessExcludedOrAlreadyPresent);
 	}
 
@@ -298,7 +491,7 @@ public class P2Query {
 			}
 
 			// lots of annoying declaration of java.blah packages, ignore all of that
-			if (req.getProviders().stream().anyMatch(u -> u.id.equals("a.jre.javase"))) {
+			if (req.isSatisfiedByJre()) {
 				iter.remove();
 			}
 		}
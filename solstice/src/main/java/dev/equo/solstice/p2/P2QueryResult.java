@@ -18,6 +18,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
 public class P2QueryResult implements Serializable {
@@ -39,6 +40,11 @@ public class P2QueryResult implements Serializable {
 		}
 	}
 
+	P2QueryResult(List<String> mavenCoordinates, List<File> downloadedP2Jars) {
+		this.mavenCoordinates = new ArrayList<>(mavenCoordinates);
+		this.downloadedP2Jars = new ArrayList<>(downloadedP2Jars);
+	}
+
 	public List<String> getJarsOnMavenCentral() {
 		return Collections.unmodifiableList(mavenCoordinates);
 	}
@@ -46,4 +52,68 @@ public class P2QueryResult implements Serializable {
 	public List<File> getJarsNotOnMavenCentral() {
 		return Collections.unmodifiableList(downloadedP2Jars);
 	}
+
+	/**
+	 * Returns the maven coordinates and jars which are in this result but not in {@code other}
+	 * (added), and those which are in {@code other} but not in this result (removed). Order within
+	 * each list follows the result it came from.
+	 */
+	public Diff diff(P2QueryResult other) {
+		return new Diff(
+				minus(mavenCoordinates, other.mavenCoordinates),
+				minus(other.mavenCoordinates, mavenCoordinates),
+				minus(downloadedP2Jars, other.downloadedP2Jars),
+				minus(other.downloadedP2Jars, downloadedP2Jars));
+	}
+
+	private static <T> List<T> minus(List<T> from, List<T> toRemove) {
+		var removeSet = new HashSet<>(toRemove);
+		var result = new ArrayList<T>();
+		for (var item : from) {
+			if (!removeSet.contains(item)) {
+				result.add(item);
+			}
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/** The difference between two {@link P2QueryResult}, see {@link P2QueryResult#diff}. */
+	public static class Diff {
+		private final List<String> addedMavenCoordinates, removedMavenCoordinates;
+		private final List<File> addedJars, removedJars;
+
+		private Diff(
+				List<String> addedMavenCoordinates,
+				List<String> removedMavenCoordinates,
+				List<File> addedJars,
+				List<File> removedJars) {
+			this.addedMavenCoordinates = addedMavenCoordinates;
+			this.removedMavenCoordinates = removedMavenCoordinates;
+			this.addedJars = addedJars;
+			this.removedJars = removedJars;
+		}
+
+		public List<String> getAddedJarsOnMavenCentral() {
+			return addedMavenCoordinates;
+		}
+
+		public List<String> getRemovedJarsOnMavenCentral() {
+			return removedMavenCoordinates;
+		}
+
+		public List<File> getAddedJarsNotOnMavenCentral() {
+			return addedJars;
+		}
+
+		public List<File> getRemovedJarsNotOnMavenCentral() {
+			return removedJars;
+		}
+
+		public boolean isEmpty() {
+			return addedMavenCoordinates.isEmpty()
+					&& removedMavenCoordinates.isEmpty()
+					&& addedJars.isEmpty()
+					&& removedJars.isEmpty();
+		}
+	}
 }
@@ -13,28 +13,257 @@
  *******************************************************************************/
 package dev.equo.solstice.p2;
 
+import dev.equo.solstice.HashMisc;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import javax.annotation.Nullable;
 import org.eclipse.osgi.internal.framework.FilterImpl;
 import org.jetbrains.annotations.NotNull;
 import org.osgi.framework.Filter;
 import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.Version;
+import org.osgi.framework.VersionRange;
 
-/** In-memory store of all p2 metadata, especially provides/requires dependency information. */
-public class P2Session {
-	final List<P2Unit> units = new ArrayList<>();
+/**
+ * In-memory store of all p2 metadata, especially provides/requires dependency information.
+ *
+ * <p>A session is mutable while it is being populated. Once {@link #freeze()} has been called it is
+ * immutable, and any number of {@link P2Query} can run against it concurrently.
+ */
+public class P2Session implements AutoCloseable {
+	List<P2Unit> units = new ArrayList<>();
+	final @Nullable UnitStore store;
+
+	public P2Session() {
+		this.store = null;
+	}
+
+	private P2Session(boolean offHeap) throws IOException {
+		this.store = offHeap ? new UnitStore(this) : null;
+	}
+
+	/**
+	 * Creates a session which keeps the xml of its units in a memory-mapped file rather than on the
+	 * heap, and which deduplicates the strings of its units. Useful for very large sessions, at the
+	 * cost of reparsing a unit's xml whenever {@link P2Unit#getRawXml()} is called. The file is
+	 * deleted when the session is {@link #close() closed}, or else once it is garbage collected.
+	 */
+	public static P2Session offHeap() throws IOException {
+		return new P2Session(true);
+	}
+
+	/**
+	 * Deletes the file of an {@link #offHeap()} session, afterwards its units can't be read. Does
+	 * nothing for a session on the heap. Sessions which {@link P2Model} shares between queries are
+	 * never closed, their file is deleted once they have been garbage collected.
+	 */
+	@Override
+	public void close() {
+		if (store != null) {
+			store.close();
+		}
+	}
+
+	private boolean lazy = false;
+
+	/**
+	 * Makes this session index its units rather than parse them fully. Only the id, version, and
+	 * provided capabilities of each unit are read while populating; everything else is parsed the
+	 * first time a {@link P2Query} visits that unit. Best when only a small fraction of the metadata
+	 * is going to be installed, which is the usual case for large composite repositories. Must be
+	 * called before the session is populated, returns this session for chaining.
+	 */
+	public P2Session materializeLazily() {
+		assertNotFrozen();
+		if (!units.isEmpty()) {
+			throw new IllegalStateException("Must be called before the session is populated.");
+		}
+		lazy = true;
+		return this;
+	}
+
+	/** Returns true if {@link #materializeLazily()} has been called. */
+	public boolean isLazy() {
+		return lazy;
+	}
+
+	/** Every unit keyed by id and version, only needed while the session is being populated. */
+	private Map<String, P2Unit> unitsByIdAndVersion = new HashMap<>();
+
+	/**
+	 * If a unit with the given id and version was already added from some other repository, records
+	 * that it is also available from {@code folder} and returns true. The same IU is often in both a
+	 * composite and one of its children, and keeping one copy avoids spurious ambiguous providers.
+	 */
+	boolean addSourceIfPresent(String id, Version version, P2Client.Folder folder) {
+		var existing = unitsByIdAndVersion.get(id + "_" + version);
+		if (existing == null) {
+			return false;
+		}
+		existing.addSource(folder);
+		return true;
+	}
+
+	void add(P2Unit unit) {
+		units.add(unit);
+		unitsByIdAndVersion.put(unit.id + "_" + unit.version, unit);
+	}
+
+	/** Returns the canonical copy of a string which is likely to be repeated across units. */
+	String intern(String value) {
+		return store == null ? value : store.intern(value);
+	}
+	private final MessageDigest contentDigest = HashMisc.sha256();
+	private String contentHash;
 
 	/** Adds every {@link P2Unit} from the given url into this session. */
 	public void populateFrom(P2Client client, String url) throws Exception {
-		client.addUnits(this, url);
+		populateFrom(client.resolveContent(url));
+	}
+
+	private void populateFrom(List<P2Client.Content> contents) throws Exception {
+		assertNotFrozen();
+		contentHash = null;
+		closures.clear();
+		searchIndex = null;
+		for (var content : contents) {
+			contentDigest.update(content.folder.url.getBytes(StandardCharsets.UTF_8));
+			contentDigest.update(content.xml.getBytes(StandardCharsets.UTF_8));
+			P2Client.parseContentXml(this, content.folder, content.xml);
+		}
 		sort();
 	}
 
+	/** A hash of every url and every {@code content.xml} which was used to populate this session. */
+	public String getContentHash() {
+		if (contentHash == null) {
+			try {
+				contentHash = HashMisc.toHex(((MessageDigest) contentDigest.clone()).digest());
+			} catch (CloneNotSupportedException e) {
+				throw Unchecked.wrap(e);
+			}
+		}
+		return contentHash;
+	}
+
+	/**
+	 * Sessions which have already been populated, keyed by their content hash, so that a long-lived
+	 * process (e.g. the Gradle daemon) doesn't reparse metadata it has already seen, and can reuse
+	 * the closures which have been memoized within it.
+	 */
+	private static final Map<String, SoftReference<P2Session>> populated = new HashMap<>();
+
+	/** System property which makes {@link P2Model} use {@link #offHeap()} sessions. */
+	public static final String OFF_HEAP_PROP = "p2SessionOffHeap";
+
+	/**
+	 * Returns a frozen session populated from the given urls. If a session with identical content
+	 * has already been populated within this JVM, it is reused. A lazy request can reuse an eager
+	 * session, but not the other way around.
+	 */
+	static P2Session populatedFrom(P2Client client, Collection<String> urls, boolean lazy)
+			throws Exception {
+		var contents = new ArrayList<P2Client.Content>();
+		var digest = HashMisc.sha256();
+		for (var url : urls) {
+			for (var content : client.resolveContent(url)) {
+				digest.update(content.folder.url.getBytes(StandardCharsets.UTF_8));
+				digest.update(content.xml.getBytes(StandardCharsets.UTF_8));
+				contents.add(content);
+			}
+		}
+		boolean offHeap = Boolean.getBoolean(OFF_HEAP_PROP);
+		var hash = HashMisc.toHex(digest.digest()) + (offHeap ? " offHeap" : "");
+		synchronized (populated) {
+			for (var key : lazy ? List.of(hash, hash + " lazy") : List.of(hash)) {
+				var existingRef = populated.get(key);
+				var existing = existingRef == null ? null : existingRef.get();
+				if (existing != null) {
+					return existing;
+				}
+			}
+			populated.values().removeIf(ref -> ref.get() == null);
+		}
+		var session = offHeap ? P2Session.offHeap() : new P2Session();
+		if (lazy) {
+			session.materializeLazily();
+		}
+		session.populateFrom(contents);
+		session.freeze();
+		synchronized (populated) {
+			populated.put(lazy ? hash + " lazy" : hash, new SoftReference<>(session));
+		}
+		return session;
+	}
+
+	/**
+	 * The closure of each root which has been installed against this session, keyed on the root and
+	 * the filters of the query which installed it.
+	 */
+	private final Map<String, P2Query.Closure> closures = new ConcurrentHashMap<>();
+
+	P2Query.Closure closure(P2Unit root, String filterKey, Supplier<P2Query.Closure> calculate) {
+		return closures.computeIfAbsent(
+				getContentHash() + "\n" + root + "\n" + filterKey, unused -> calculate.get());
+	}
+
+	private volatile boolean frozen = false;
+
+	/**
+	 * Makes this session immutable and compacts its internal storage. Afterwards the session cannot
+	 * be populated any further, and it is safe to run many {@link P2Query} against it concurrently
+	 * without any locking, so long as the session itself was handed to the other threads safely
+	 * (e.g. through an executor). Returns this session for chaining.
+	 */
+	public P2Session freeze() {
+		if (frozen) {
+			return this;
+		}
+		units.sort(Comparator.naturalOrder());
+		units = List.copyOf(units);
+		unitsByIdAndVersion = null;
+		var frozenRequirements = new HashMap<String, Map<String, RequirementRoot>>(requirements.size());
+		for (var namespace : requirements.entrySet()) {
+			for (var requirement : namespace.getValue().values()) {
+				requirement.freeze();
+			}
+			frozenRequirements.put(namespace.getKey(), Map.copyOf(namespace.getValue()));
+		}
+		requirements = Map.copyOf(frozenRequirements);
+		// lazy units will still parse filters and requirements after the freeze
+		filterCache = lazy ? new ConcurrentHashMap<>(filterCache) : null;
+		rangeCache = lazy ? new ConcurrentHashMap<>(rangeCache) : null;
+		if (store != null) {
+			store.freeze();
+		}
+		getContentHash();
+		frozen = true;
+		return this;
+	}
+
+	/** Returns true if {@link #freeze()} has been called. */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void assertNotFrozen() {
+		if (frozen) {
+			throw new IllegalStateException("This session has been frozen, it cannot be modified.");
+		}
+	}
+
 	private void sort() {
 		units.sort(Comparator.naturalOrder());
 		for (var namespace : requirements.values()) {
@@ -49,12 +278,59 @@ public class P2Session {
 	 * one with the greatest version number. If there are none, throws an exception.
 	 */
 	public P2Unit getUnitById(String id) {
-		for (var unit : units) {
-			if (id.equals(unit.id)) {
-				return unit;
+		var withId = getUnitsById(id);
+		if (withId.isEmpty()) {
+			throw new IllegalArgumentException("No such unit id " + id);
+		}
+		return withId.get(0);
+	}
+
+	/**
+	 * Returns every unit with the given id, greatest version first. The units are sorted by id, so
+	 * this is a binary search.
+	 */
+	List<P2Unit> getUnitsById(String id) {
+		int lo = 0;
+		int hi = units.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (units.get(mid).id.compareTo(id) >= 0) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
 			}
 		}
-		throw new IllegalArgumentException("No such unit id " + id);
+		int end = lo;
+		while (end < units.size() && units.get(end).id.equals(id)) {
+			++end;
+		}
+		return units.subList(lo, end);
+	}
+
+	private volatile SearchIndex searchIndex;
+
+	/**
+	 * Returns an index for searching the units of this session, which is built the first time it is
+	 * needed. Building it parses the properties of every unit.
+	 */
+	SearchIndex searchIndex() {
+		var index = searchIndex;
+		if (index == null) {
+			synchronized (this) {
+				index = searchIndex;
+				if (index == null) {
+					index = new SearchIndex(this);
+					searchIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+
+	/** Returns every capability in the given namespace which is provided or required by some unit. */
+	Collection<? extends Requirement> providersOf(String namespace) {
+		var perName = requirements.get(namespace);
+		return perName == null ? Collections.emptyList() : perName.values();
 	}
 
 	/** Creates a new {@link P2Query} against this session. */
@@ -83,6 +359,22 @@ public class P2Session {
 		/** Returns a non-optional form of the requirement. */
 		Requirement getRoot();
 
+		/** The versions of the capability which satisfy this requirement, or null for any version. */
+		@Nullable
+		VersionRange getRange();
+
+		/**
+		 * Returns the providers whose version of the capability is within {@link #getRange()}, best
+		 * (greatest version) first.
+		 */
+		List<P2Unit> getProvidersInRange();
+
+		/**
+		 * Returns true if every JRE satisfies this requirement, either according to {@link JreProfile}
+		 * or because one of its providers is the {@code a.jre.javase} unit.
+		 */
+		boolean isSatisfiedByJre();
+
 		@Override
 		default int compareTo(@NotNull Requirement o) {
 			int byNamespace = getNamespace().compareTo(o.getNamespace());
@@ -93,6 +385,19 @@ public class P2Session {
 			if (byName != 0) {
 				return byName;
 			}
+			// requirements which differ only by range are distinct, e.g. two pinned versions of an iu
+			var range = getRange();
+			var otherRange = o.getRange();
+			if (range == null || otherRange == null) {
+				if (range != otherRange) {
+					return range == null ? -1 : 1;
+				}
+			} else {
+				int byRange = range.toString().compareTo(otherRange.toString());
+				if (byRange != 0) {
+					return byRange;
+				}
+			}
 			return toString().compareTo(o.toString());
 		}
 	}
@@ -110,10 +415,16 @@ public class P2Session {
 		private final String namespace;
 		private final String name;
 		private Object providers;
+		/** The provided version of the capability, parallel to {@link #providers}. */
+		private Object versions;
+		/** Indices into {@link #providers} sorted by ascending version, if there are several. */
+		private int[] byVersion;
+		private boolean satisfiedByJre;
 
 		private RequirementRoot(String namespace, String name) {
 			this.namespace = namespace;
 			this.name = name;
+			this.satisfiedByJre = JreProfile.provides(namespace, name);
 		}
 
 		@Override
@@ -137,8 +448,17 @@ public class P2Session {
 			return name;
 		}
 
-		private void add(P2Unit unit) {
+		private void add(P2Unit unit, Version version) {
 			providers = add(providers, unit);
+			versions = add(versions, version);
+			if (JreProfile.isJre(unit)) {
+				satisfiedByJre = true;
+			}
+		}
+
+		@Override
+		public boolean isSatisfiedByJre() {
+			return satisfiedByJre;
 		}
 
 		@Override
@@ -161,24 +481,108 @@ public class P2Session {
 			return this;
 		}
 
+		@Nullable
+		@Override
+		public VersionRange getRange() {
+			return null;
+		}
+
+		@Override
+		public List<P2Unit> getProvidersInRange() {
+			return getProviders();
+		}
+
+		/** Binary searches the providers for the ones within the given range. */
+		private List<P2Unit> getProvidersInRange(VersionRange range) {
+			if (providers == null) {
+				return Collections.emptyList();
+			} else if (providers instanceof P2Unit) {
+				return range.includes((Version) versions)
+						? Collections.singletonList((P2Unit) providers)
+						: Collections.emptyList();
+			}
+			var units = (List<P2Unit>) providers;
+			var vers = (List<Version>) versions;
+			int lo = 0;
+			int hi = byVersion.length;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (isAbove(range, vers.get(byVersion[mid]))) {
+					hi = mid;
+				} else {
+					lo = mid + 1;
+				}
+			}
+			// everything below `lo` is within the right side of the range, so walk down the left side
+			var matches = new ArrayList<P2Unit>();
+			for (int i = lo - 1; i >= 0 && range.includes(vers.get(byVersion[i])); --i) {
+				matches.add(units.get(byVersion[i]));
+			}
+			return matches;
+		}
+
+		private static boolean isAbove(VersionRange range, Version version) {
+			var right = range.getRight();
+			if (right == null) {
+				return false;
+			}
+			int compare = version.compareTo(right);
+			return compare > 0 || (compare == 0 && range.getRightType() == VersionRange.RIGHT_OPEN);
+		}
+
 		private void sortProviders() {
+			if (!(providers instanceof ArrayList)) {
+				return;
+			}
+			var units = (ArrayList<P2Unit>) providers;
+			var vers = (ArrayList<Version>) versions;
+			var order = new Integer[units.size()];
+			for (int i = 0; i < order.length; ++i) {
+				order[i] = i;
+			}
+			Arrays.sort(order, Comparator.comparing(units::get));
+			var sortedUnits = new ArrayList<P2Unit>(order.length);
+			var sortedVersions = new ArrayList<Version>(order.length);
+			for (int i : order) {
+				sortedUnits.add(units.get(i));
+				sortedVersions.add(vers.get(i));
+			}
+			providers = sortedUnits;
+			versions = sortedVersions;
+			// ties on version go to whichever provider comes first in the sorted providers
+			Arrays.sort(
+					order,
+					Comparator.<Integer, Version>comparing(sortedVersions::get)
+							.thenComparing(Comparator.reverseOrder()));
+			byVersion = new int[order.length];
+			for (int i = 0; i < order.length; ++i) {
+				byVersion[i] = order[i];
+			}
+		}
+
+		/** Replaces a growable provider list with an immutable and compact one. */
+		private void freeze() {
 			if (providers instanceof ArrayList) {
-				((ArrayList<P2Unit>) providers).sort(Comparator.naturalOrder());
+				if (byVersion == null || byVersion.length != ((ArrayList<P2Unit>) providers).size()) {
+					sortProviders();
+				}
+				providers = List.copyOf((ArrayList<P2Unit>) providers);
+				versions = List.copyOf((ArrayList<Version>) versions);
 			}
 		}
 
 		/** FYI, profiling against Eclipse 4.25 shows that 95% of these don't need a list. */
-		private static Object add(Object existing, P2Unit toAdd) {
+		private static <T> Object add(Object existing, T toAdd) {
 			if (existing == null) {
 				return toAdd;
-			} else if (existing instanceof P2Unit) {
-				var list = new ArrayList<P2Unit>();
-				list.add((P2Unit) existing);
+			} else if (existing instanceof ArrayList) {
+				((ArrayList<T>) existing).add(toAdd);
+				return existing;
+			} else {
+				var list = new ArrayList<T>();
+				list.add((T) existing);
 				list.add(toAdd);
 				return list;
-			} else {
-				((ArrayList<P2Unit>) existing).add(toAdd);
-				return existing;
 			}
 		}
 
@@ -188,7 +592,7 @@ public class P2Session {
 			} else if (existing instanceof P2Unit) {
 				return Collections.singletonList((P2Unit) existing);
 			} else {
-				return (ArrayList<P2Unit>) existing;
+				return (List<P2Unit>) existing;
 			}
 		}
 
@@ -210,11 +614,28 @@ public class P2Session {
 		final RequirementRoot root;
 		final boolean isOptional;
 		final @Nullable Filter filter;
+		final @Nullable VersionRange range;
 
-		RequirementModified(RequirementRoot root, boolean isOptional, @Nullable Filter filter) {
+		RequirementModified(
+				RequirementRoot root,
+				boolean isOptional,
+				@Nullable Filter filter,
+				@Nullable VersionRange range) {
 			this.root = root;
 			this.isOptional = isOptional;
 			this.filter = filter;
+			this.range = range;
+		}
+
+		@Nullable
+		@Override
+		public VersionRange getRange() {
+			return range;
+		}
+
+		@Override
+		public List<P2Unit> getProvidersInRange() {
+			return range == null ? root.getProviders() : root.getProvidersInRange(range);
 		}
 
 		@Override
@@ -230,15 +651,17 @@ public class P2Session {
 
 		@Override
 		public String toString() {
+			var builder = new StringBuilder(root.toString());
+			if (range != null) {
+				builder.append(' ').append(range);
+			}
 			if (isOptional) {
-				if (filter != null) {
-					return root + " (opt) " + filter;
-				} else {
-					return root + " (opt)";
-				}
-			} else {
-				return root + " " + filter;
+				builder.append(" (opt)");
+			}
+			if (filter != null) {
+				builder.append(' ').append(filter);
 			}
+			return builder.toString();
 		}
 
 		// methods below this are all pure delegation
@@ -271,30 +694,81 @@ public class P2Session {
 		public Requirement getRoot() {
 			return root;
 		}
+
+		@Override
+		public boolean isSatisfiedByJre() {
+			return root.isSatisfiedByJre();
+		}
 	}
 
-	private final Map<String, Map<String, RequirementRoot>> requirements = new HashMap<>();
+	private Map<String, Map<String, RequirementRoot>> requirements = new HashMap<>();
+
+	/**
+	 * Requirements which a lazy unit discovered after the session was frozen, and which nothing
+	 * provides (otherwise they would already be in {@link #requirements}).
+	 */
+	private final Map<String, RequirementRoot> unprovided = new ConcurrentHashMap<>();
 
 	private RequirementRoot requires(String namespace, String name) {
+		if (frozen) {
+			var perName = requirements.get(namespace);
+			var root = perName == null ? null : perName.get(name);
+			if (root != null) {
+				return root;
+			}
+			return unprovided.computeIfAbsent(
+					namespace + "\n" + name, unused -> new RequirementRoot(namespace, name));
+		}
 		var perName = requirements.computeIfAbsent(namespace, unused -> new HashMap<>());
 		return perName.computeIfAbsent(name, n -> new RequirementRoot(namespace, n));
 	}
 
 	Requirement requires(
-			String namespace, String name, boolean optional, @Nullable FilterImpl filter) {
+			String namespace,
+			String name,
+			boolean optional,
+			@Nullable FilterImpl filter,
+			@Nullable VersionRange range) {
 		var root = requires(namespace, name);
-		if (!optional && filter == null) {
+		if (!optional && filter == null && range == null) {
 			return root;
 		} else {
-			return new RequirementModified(root, optional, filter);
+			return new RequirementModified(root, optional, filter, range);
 		}
 	}
 
-	void provides(String namespace, String name, P2Unit unit) {
-		requires(namespace, name).add(unit);
+	void provides(String namespace, String name, Version version, P2Unit unit) {
+		assertNotFrozen();
+		requires(namespace, name).add(unit, version);
+	}
+
+	private Map<String, VersionRange> rangeCache = new HashMap<>();
+
+	/** Returns the parsed range, or null if the range includes every version. */
+	@Nullable
+	VersionRange parseRange(@Nullable String range) {
+		if (range == null) {
+			return null;
+		}
+		var parsed = rangeCache.computeIfAbsent(range, VersionRange::valueOf);
+		if (parsed.getLeft().equals(Version.emptyVersion)
+				&& parsed.getLeftType() == VersionRange.LEFT_CLOSED
+				&& parsed.getRight() == null) {
+			return null;
+		}
+		return parsed;
+	}
+
+	/** Returns the given version, reusing {@code unitVersion} if it is the same. */
+	static Version parseVersion(@Nullable String version, Version unitVersion) {
+		if (version == null) {
+			return Version.emptyVersion;
+		}
+		var parsed = Version.parseVersion(version);
+		return parsed.equals(unitVersion) ? unitVersion : parsed;
 	}
 
-	private final Map<String, FilterImpl> filterCache = new HashMap<>();
+	private Map<String, FilterImpl> filterCache = new HashMap<>();
 
 	FilterImpl parseFilter(String filter) {
 		return filterCache.computeIfAbsent(
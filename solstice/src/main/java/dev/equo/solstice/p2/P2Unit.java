@@ -14,10 +14,13 @@
 package dev.equo.solstice.p2;
 
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import javax.annotation.Nullable;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -31,28 +34,51 @@ import org.w3c.dom.Node;
 
 /** Usually represents a jar file in a p2 repository, but could also be a "feature" or "group". */
 public class P2Unit implements Comparable<P2Unit> {
-	final Node rootNode;
+	final UnitStore.Xml xml;
 	final P2Client.Folder index;
 	final String id;
 	final Version version;
-	Filter filter;
-	final TreeMap<String, String> properties = new TreeMap<>();
-	final TreeSet<P2Session.Requirement> requires = new TreeSet<>();
+	private Filter filter;
+	private final TreeMap<String, String> properties = new TreeMap<>();
+	private final TreeSet<P2Session.Requirement> requires = new TreeSet<>();
 
-	P2Unit(P2Session session, P2Client.Folder index, Node rootNode) {
-		this.rootNode = rootNode;
+	/** Non-null until a lazily indexed unit has parsed its filter, properties, and requirements. */
+	private volatile P2Session toMaterialize;
+
+	/** Parses every part of the unit right away. */
+	P2Unit(P2Session session, P2Client.Folder index, Node rootNode, UnitStore.Xml xml) {
+		this.xml = xml;
 		this.index = index;
-		id = rootNode.getAttributes().getNamedItem("id").getNodeValue();
+		id = session.intern(rootNode.getAttributes().getNamedItem("id").getNodeValue());
 		version = Version.parseVersion(rootNode.getAttributes().getNamedItem("version").getNodeValue());
+		parse(session, rootNode, true);
+	}
+
+	/**
+	 * Creates a unit whose provided capabilities have already been registered with the session by
+	 * {@link P2Client}'s index pass. Everything else is parsed from {@code xml} the first time it is
+	 * needed.
+	 */
+	P2Unit(P2Session session, P2Client.Folder index, String id, Version version, UnitStore.Xml xml) {
+		this.xml = xml;
+		this.index = index;
+		this.id = session.intern(id);
+		this.version = version;
+		this.toMaterialize = session;
+	}
+
+	private void parse(P2Session session, Node rootNode, boolean withProvides) {
 		var nodeList = rootNode.getChildNodes();
 		for (int i = 0; i < nodeList.getLength(); ++i) {
 			var node = nodeList.item(i);
 			if ("filter".equals(node.getNodeName())) {
 				filter = session.parseFilter(node.getTextContent().trim());
 			} else if ("properties".equals(node.getNodeName())) {
-				parseProperties(node);
+				parseProperties(session, node);
 			} else if ("provides".equals(node.getNodeName())) {
-				parseProvides(session, node);
+				if (withProvides) {
+					parseProvides(session, node);
+				}
 			} else if ("requires".equals(node.getNodeName())) {
 				parseRequires(session, node);
 			} else if ("artifacts".equals(node.getNodeName())) {
@@ -61,6 +87,49 @@ public class P2Unit implements Comparable<P2Unit> {
 		}
 	}
 
+	private void materialize() {
+		if (toMaterialize != null) {
+			synchronized (this) {
+				var session = toMaterialize;
+				if (session != null) {
+					parse(session, xml.node(), false);
+					toMaterialize = null;
+				}
+			}
+		}
+	}
+
+	/** The platform filter of this unit, if any. */
+	@Nullable
+	Filter filter() {
+		materialize();
+		return filter;
+	}
+
+	/** The properties of this unit, restricted to the ones which Solstice uses. */
+	TreeMap<String, String> properties() {
+		materialize();
+		return properties;
+	}
+
+	private volatile RepoStatus repoStatus;
+
+	/** Memoized {@link RepoStatus#forUnit(P2Unit)}, it only depends on the unit's properties. */
+	RepoStatus repoStatus() {
+		var status = repoStatus;
+		if (status == null) {
+			status = RepoStatus.calculate(this);
+			repoStatus = status;
+		}
+		return status;
+	}
+
+	/** Everything this unit requires. */
+	TreeSet<P2Session.Requirement> requires() {
+		materialize();
+		return requires;
+	}
+
 	private void parseArtifact(Node node) {
 		String artifactClassifier = null;
 		var artifactNodes = node.getChildNodes();
@@ -86,7 +155,7 @@ public class P2Unit implements Comparable<P2Unit> {
 		}
 	}
 
-	private void parseProperties(Node node) {
+	private void parseProperties(P2Session session, Node node) {
 		var propertyNodes = node.getChildNodes();
 		var needsReplacing = new TreeMap<String, String>();
 		for (int i = 0; i < propertyNodes.getLength(); ++i) {
@@ -95,7 +164,8 @@ public class P2Unit implements Comparable<P2Unit> {
 				var name = propNode.getAttributes().getNamedItem("name").getNodeValue();
 				var idx = PROP_FILTER.indexOf(name);
 				if (idx != -1) {
-					String value = propNode.getAttributes().getNamedItem("value").getNodeValue();
+					String value =
+							session.intern(propNode.getAttributes().getNamedItem("value").getNodeValue());
 					properties.put(PROP_FILTER.get(idx), value);
 					if (value.startsWith("%")) {
 						needsReplacing.put(value, name);
@@ -112,7 +182,8 @@ public class P2Unit implements Comparable<P2Unit> {
 						var replaceKey = "%" + name.substring(df_LT.length());
 						var keyThatNeedsReplacement = needsReplacing.remove(replaceKey);
 						if (keyThatNeedsReplacement != null) {
-							String value = propNode.getAttributes().getNamedItem("value").getNodeValue();
+							String value =
+									session.intern(propNode.getAttributes().getNamedItem("value").getNodeValue());
 							properties.put(keyThatNeedsReplacement, value);
 							if (needsReplacing.isEmpty()) {
 								break;
@@ -136,7 +207,11 @@ public class P2Unit implements Comparable<P2Unit> {
 					continue;
 				}
 				var name = node.getAttributes().getNamedItem("name").getNodeValue();
-				session.provides(namespace, name, this);
+				var versionNode = node.getAttributes().getNamedItem("version");
+				var providedVersion =
+						P2Session.parseVersion(
+								versionNode == null ? null : versionNode.getNodeValue(), version);
+				session.provides(namespace, name, providedVersion, this);
 			}
 		}
 	}
@@ -176,7 +251,9 @@ public class P2Unit implements Comparable<P2Unit> {
 					}
 				}
 				var name = node.getAttributes().getNamedItem("name").getNodeValue();
-				requires.add(session.requires(namespace, name, isOptional, filter));
+				var rangeNode = node.getAttributes().getNamedItem("range");
+				var range = session.parseRange(rangeNode == null ? null : rangeNode.getNodeValue());
+				requires.add(session.requires(namespace, name, isOptional, filter, range));
 			}
 		}
 	}
@@ -215,7 +292,7 @@ public class P2Unit implements Comparable<P2Unit> {
 					P2_TYPE_CATEGORY,
 					P2_TYPE_FEATURE);
 
-	private static final List<String> EXCLUDED_REQUIRE_PROVIDE_NAMESPACES =
+	static final List<String> EXCLUDED_REQUIRE_PROVIDE_NAMESPACES =
 			Arrays.asList("org.eclipse.equinox.p2.eclipse.type", "osgi.ee");
 
 	/** Sorted alphabetically based on id, and then based on version with greater versions first. */
@@ -246,7 +323,7 @@ public class P2Unit implements Comparable<P2Unit> {
 		transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
 
 		var writer = new StringWriter();
-		transformer.transform(new DOMSource(rootNode), new StreamResult(writer));
+		transformer.transform(new DOMSource(xml.node()), new StreamResult(writer));
 		var raw = writer.toString();
 		var unixEndings = raw.replace("\r", "");
 		var lines = unixEndings.split("\n");
@@ -260,10 +337,38 @@ public class P2Unit implements Comparable<P2Unit> {
 		return result.toString();
 	}
 
+	/** Other repositories which have this same unit, in the order they were added to the session. */
+	private List<P2Client.Folder> otherSources = Collections.emptyList();
+
+	void addSource(P2Client.Folder source) {
+		if (source.url.equals(index.url)) {
+			return;
+		}
+		for (var other : otherSources) {
+			if (source.url.equals(other.url)) {
+				return;
+			}
+		}
+		if (otherSources.isEmpty()) {
+			otherSources = new ArrayList<>(1);
+		}
+		otherSources.add(source);
+	}
+
 	public String getRepoUrl() {
 		return index.url;
 	}
 
+	/** {@link #getRepoUrl()} followed by every other repository which has this same unit. */
+	public List<String> getRepoUrls() {
+		var urls = new ArrayList<String>(1 + otherSources.size());
+		urls.add(index.url);
+		for (var other : otherSources) {
+			urls.add(other.url);
+		}
+		return urls;
+	}
+
 	public String getRepoUrlLastSegment() {
 		char lastChar = index.url.charAt(index.url.length() - 1);
 		if (lastChar != '/') {
@@ -274,6 +379,11 @@ public class P2Unit implements Comparable<P2Unit> {
 	}
 
 	public String getJarUrl() {
-		return index.url + "plugins/" + id + "_" + version + ".jar";
+		return getJarUrl(index.url);
+	}
+
+	/** The url of this unit's jar within the given repository. */
+	String getJarUrl(String repoUrl) {
+		return repoUrl + "plugins/" + id + "_" + version + ".jar";
 	}
 }
@@ -13,19 +13,37 @@
  *******************************************************************************/
 package dev.equo.solstice.p2;
 
+import dev.equo.solstice.HashMisc;
 import dev.equo.solstice.NestedJars;
 import dev.equo.solstice.SerializableMisc;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import javax.annotation.Nullable;
 
+/**
+ * Caches {@link P2QueryResult} on disk, keyed by a sha-256 of the canonical {@link P2Model}. Every
+ * entry records the digest of each p2 metadata file which went into it, and an entry is only used
+ * if the offline metadata cache still has exactly those files and every downloaded jar still
+ * exists.
+ */
 class QueryCacheOnDisk {
 	final File rootDir;
 	final String key;
 
 	QueryCacheOnDisk(File rootDir, P2Model model) {
 		this.rootDir = rootDir;
-		this.key = NestedJars.solsticeVersion() + model.hashCode();
+		var digest = HashMisc.sha256();
+		digest.update(NestedJars.solsticeVersion().getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) '\n');
+		digest.update(model.toString().getBytes(StandardCharsets.UTF_8));
+		this.key = HashMisc.toHex(digest.digest());
 		if (!FileMisc.readToken(rootDir, VERSION).equals(Optional.of(VERSION_VALUE))) {
 			if (rootDir.exists()) {
 				FileMisc.delete(rootDir);
@@ -36,22 +54,86 @@ class QueryCacheOnDisk {
 	}
 
 	private static final String VERSION = "version";
-	private static final String VERSION_VALUE = "1";
+	private static final String VERSION_VALUE = "2";
 
 	private static final String CONTENT = "content";
+	private static final String METADATA = "metadata";
 
+	/** Returns the cached result, or null if there isn't one or if it is stale. */
 	public @Nullable P2QueryResult get() {
-		var dir = new File(rootDir, OfflineCache.filenameSafe(key));
-		if (dir.isDirectory()) {
-			return SerializableMisc.fromFile(P2QueryResult.class, new File(dir, CONTENT));
-		} else {
+		var dir = new File(rootDir, key);
+		var metadata = new File(dir, METADATA);
+		if (!metadata.isFile()) {
 			return null;
 		}
+		try {
+			for (var line : Files.readAllLines(metadata.toPath(), StandardCharsets.UTF_8)) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				int space = line.indexOf(' ');
+				var digest = line.substring(0, space);
+				var url = line.substring(space + 1);
+				if (!digest.equals(P2Client.cachedMetadataDigest(url))) {
+					return null;
+				}
+			}
+			var result = readResult(new File(dir, CONTENT));
+			for (var jar : result.getJarsNotOnMavenCentral()) {
+				if (!jar.isFile()) {
+					return null;
+				}
+			}
+			return result;
+		} catch (IOException | RuntimeException e) {
+			// an unreadable entry is the same as a missing one, it will be recalculated
+			return null;
+		}
+	}
+
+	private static final String FORMAT = "p2-query-result";
+	private static final String MAVEN = "maven";
+	private static final String P2 = "p2";
+
+	private static void writeResult(P2QueryResult result, File file) {
+		var p2Jars = new ArrayList<String>();
+		for (var jar : result.getJarsNotOnMavenCentral()) {
+			p2Jars.add(jar.getAbsolutePath());
+		}
+		var sections = new LinkedHashMap<String, List<String>>();
+		sections.put(MAVEN, result.getJarsOnMavenCentral());
+		sections.put(P2, p2Jars);
+		SerializableMisc.linesToFile(FORMAT, sections, file);
 	}
 
-	public void put(P2QueryResult query) {
-		var dir = new File(rootDir, OfflineCache.filenameSafe(key));
+	private static P2QueryResult readResult(File file) {
+		var sections = SerializableMisc.linesFromFile(FORMAT, file);
+		if (sections == null) {
+			return SerializableMisc.fromFile(P2QueryResult.class, file);
+		}
+		var p2Jars = new ArrayList<File>();
+		for (var path : sections.get(P2)) {
+			p2Jars.add(new File(path));
+		}
+		return new P2QueryResult(sections.get(MAVEN), p2Jars);
+	}
+
+	/**
+	 * Stores the given result along with the digests of the metadata it was calculated from. If the
+	 * digests are null, then the metadata can't be validated later and nothing is stored.
+	 */
+	public void put(P2QueryResult query, @Nullable Map<String, String> metadataDigests) {
+		if (metadataDigests == null) {
+			return;
+		}
+		var dir = new File(rootDir, key);
 		FileMisc.mkdirs(dir);
-		SerializableMisc.toFile(query, new File(dir, CONTENT));
+		var metadata = new StringBuilder();
+		for (var entry : metadataDigests.entrySet()) {
+			metadata.append(entry.getValue()).append(' ').append(entry.getKey()).append('\n');
+		}
+		writeResult(query, new File(dir, CONTENT));
+		// written last, so that an entry without it is never read
+		FileMisc.writeToken(dir, METADATA, metadata.toString());
 	}
 }
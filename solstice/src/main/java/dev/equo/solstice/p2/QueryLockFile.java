@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice.p2;
+
+import dev.equo.solstice.HashMisc;
+import dev.equo.solstice.SerializableMisc;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Pins the result of a {@link P2Model} to a file which can be checked into the project. It records
+ * the maven coordinates, and for each p2 jar its filename, sha-256, and the repositories it can be
+ * downloaded from, so that reading it needs no p2 metadata and no resolution.
+ */
+class QueryLockFile {
+	final File file;
+	final String modelDigest;
+
+	QueryLockFile(File file, P2Model model) {
+		this.file = file;
+		var digest = HashMisc.sha256();
+		digest.update(model.toString().getBytes(StandardCharsets.UTF_8));
+		this.modelDigest = HashMisc.toHex(digest.digest());
+	}
+
+	private static final String FORMAT = "p2-lock";
+	private static final String MODEL = "model";
+	private static final String MAVEN = "maven";
+	private static final String P2 = "p2";
+	private static final String REPOS = "repos";
+
+	/**
+	 * Downloads the locked jars and returns the locked result, or returns null if there is no lock
+	 * file yet. Throws an exception if the lock file was written for a different model.
+	 */
+	public @Nullable P2QueryResult read(P2ClientCache cachingPolicy) throws IOException {
+		if (!file.isFile()) {
+			return null;
+		}
+		var sections = SerializableMisc.linesFromFile(FORMAT, file);
+		if (sections == null) {
+			throw new IllegalArgumentException(file + " is not a p2 lock file");
+		}
+		if (!sections.get(MODEL).equals(List.of(modelDigest))) {
+			throw new IllegalStateException(
+					file + " was written for a different p2 model, update it with --update-lock");
+		}
+		var p2Jars = new ArrayList<File>();
+		var repos = sections.get(REPOS).iterator();
+		try (var client = new P2Client(cachingPolicy)) {
+			for (var line : sections.get(P2)) {
+				// <sha256> <repoCount> <filename>, followed by that many lines in the repos section
+				var parts = line.split(" ", 3);
+				if (parts.length < 3) {
+					throw new IllegalArgumentException("Malformed line in " + file + ": " + line);
+				}
+				int repoCount = Integer.parseInt(parts[1]);
+				var repoUrls = new ArrayList<String>(repoCount);
+				for (int i = 0; i < repoCount; ++i) {
+					repoUrls.add(repos.next());
+				}
+				p2Jars.add(client.download(repoUrls, parts[2], parts[0]));
+			}
+		}
+		return new P2QueryResult(sections.get(MAVEN), p2Jars);
+	}
+
+	/**
+	 * Writes the given result, where {@code units} are the units which were downloaded into {@link
+	 * P2QueryResult#getJarsNotOnMavenCentral()}, in the same order.
+	 */
+	public void write(P2QueryResult result, List<P2Unit> units) throws IOException {
+		var jars = result.getJarsNotOnMavenCentral();
+		var p2Lines = new ArrayList<String>(units.size());
+		var repoLines = new ArrayList<String>();
+		for (int i = 0; i < units.size(); ++i) {
+			var unit = units.get(i);
+			var repoUrls = unit.getRepoUrls();
+			p2Lines.add(
+					JarCache.sha256(jars.get(i))
+							+ " "
+							+ repoUrls.size()
+							+ " "
+							+ unit.id
+							+ "_"
+							+ unit.version
+							+ ".jar");
+			repoLines.addAll(repoUrls);
+		}
+		var sections = new LinkedHashMap<String, List<String>>();
+		sections.put(MODEL, List.of(modelDigest));
+		sections.put(MAVEN, result.getJarsOnMavenCentral());
+		sections.put(P2, p2Lines);
+		sections.put(REPOS, repoLines);
+		SerializableMisc.linesToFile(FORMAT, sections, file);
+	}
+}
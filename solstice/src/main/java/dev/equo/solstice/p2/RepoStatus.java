@@ -77,10 +77,15 @@ public class RepoStatus implements Comparable<RepoStatus> {
 		return repo;
 	}
 
+	/** Returns the status of the given unit, which is calculated only once per unit. */
 	public static RepoStatus forUnit(P2Unit unit) {
-		var group = unit.properties.get(P2Unit.MAVEN_GROUP_ID);
-		var artifact = unit.properties.get(P2Unit.MAVEN_ARTIFACT_ID);
-		var version = unit.properties.get(P2Unit.MAVEN_VERSION);
+		return unit.repoStatus();
+	}
+
+	static RepoStatus calculate(P2Unit unit) {
+		var group = unit.properties().get(P2Unit.MAVEN_GROUP_ID);
+		var artifact = unit.properties().get(P2Unit.MAVEN_ARTIFACT_ID);
+		var version = unit.properties().get(P2Unit.MAVEN_VERSION);
 		if (group != null && artifact != null && version != null) {
 			if (unit.getId().equals("org.eclipse.equinox.preferences")
 					&& unit.getVersion().toString().equals("3.10.0.v20220503-1634")) {
@@ -91,7 +96,7 @@ public class RepoStatus implements Comparable<RepoStatus> {
 				// See https://github.com/eclipse-equinox/equinox.framework/issues/70
 				return new RepoStatus("org.eclipse.platform:" + artifact + ":3.7.1", MAVEN_CENTRAL);
 			}
-			var repo = unit.properties.get(P2Unit.MAVEN_REPOSITORY);
+			var repo = unit.properties().get(P2Unit.MAVEN_REPOSITORY);
 			if (MavenCentralMapping.MIRROR.equals(repo)) {
 				return new RepoStatus(group + ":" + artifact + ":" + version, MAVEN_CENTRAL);
 			} else {
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice.p2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * Finds units in a {@link P2Session} by id prefix, by the words of their name and description, or
+ * by the java packages they provide. Ids, words and packages are kept in sorted arrays with a
+ * posting list of unit indices each, so a prefix of any of them is a binary search. Ids and words
+ * are lowercase, so that both kinds of match ignore case the same way.
+ */
+class SearchIndex {
+	/** Prefix for a query which searches provided java packages rather than ids and names. */
+	static final String PACKAGE_PREFIX = "pkg:";
+
+	private final List<P2Unit> units;
+	private final String[] ids;
+	private final int[][] idPostings;
+	private final String[] words;
+	private final int[][] wordPostings;
+	private final String[] packages;
+	private final int[][] packagePostings;
+
+	SearchIndex(P2Session session) {
+		units = session.units;
+		var indexOf = new IdentityHashMap<P2Unit, Integer>(units.size());
+		var byId = new TreeMap<String, BitSet>();
+		var byWord = new TreeMap<String, BitSet>();
+		for (int i = 0; i < units.size(); ++i) {
+			var unit = units.get(i);
+			indexOf.put(unit, i);
+			byId.computeIfAbsent(unit.id.toLowerCase(Locale.ROOT), unused -> new BitSet()).set(i);
+			for (var key : List.of(P2Unit.P2_NAME, P2Unit.P2_DESC)) {
+				var text = unit.properties().get(key);
+				if (text != null) {
+					for (var word : tokenize(text)) {
+						byWord.computeIfAbsent(word, unused -> new BitSet()).set(i);
+					}
+				}
+			}
+		}
+		ids = byId.keySet().toArray(new String[0]);
+		idPostings = toPostings(byId);
+		words = byWord.keySet().toArray(new String[0]);
+		wordPostings = toPostings(byWord);
+
+		var byPackage = new TreeMap<String, BitSet>();
+		for (var requirement : session.providersOf("java.package")) {
+			var postings = byPackage.computeIfAbsent(requirement.getName(), unused -> new BitSet());
+			for (var provider : requirement.getProviders()) {
+				var idx = indexOf.get(provider);
+				if (idx != null) {
+					postings.set(idx);
+				}
+			}
+		}
+		packages = byPackage.keySet().toArray(new String[0]);
+		packagePostings = toPostings(byPackage);
+	}
+
+	private static int[][] toPostings(TreeMap<String, BitSet> map) {
+		var postings = new int[map.size()][];
+		int i = 0;
+		for (var bits : map.values()) {
+			postings[i++] = bits.stream().toArray();
+		}
+		return postings;
+	}
+
+	/** Splits the given text into lowercase words of letters and digits. */
+	static List<String> tokenize(String text) {
+		var words = new ArrayList<String>();
+		int start = -1;
+		for (int i = 0; i <= text.length(); ++i) {
+			boolean isWordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (isWordChar && start == -1) {
+				start = i;
+			} else if (!isWordChar && start != -1) {
+				words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Returns every unit which matches the given query, in session order (by id, then latest version
+	 * first). A query of {@code pkg:some.package} matches units which provide a package with that
+	 * prefix. Any other query matches units whose id starts with it, as well as units whose name or
+	 * description has a word starting with each of the query's words, ignoring case for both.
+	 */
+	List<P2Unit> search(String query) {
+		if (query.startsWith(PACKAGE_PREFIX)) {
+			return byPackagePrefix(query.substring(PACKAGE_PREFIX.length()));
+		}
+		var matches = idPrefixMatches(query);
+		BitSet textMatches = null;
+		for (var word : tokenize(query)) {
+			var wordMatches = union(words, wordPostings, word);
+			if (textMatches == null) {
+				textMatches = wordMatches;
+			} else {
+				textMatches.and(wordMatches);
+			}
+		}
+		if (textMatches != null) {
+			matches.or(textMatches);
+		}
+		return toUnits(matches);
+	}
+
+	/** Returns every unit whose id starts with the given prefix, ignoring case. */
+	List<P2Unit> byIdPrefix(String prefix) {
+		return toUnits(idPrefixMatches(prefix));
+	}
+
+	/** Returns every unit which provides a java package starting with the given prefix. */
+	List<P2Unit> byPackagePrefix(String prefix) {
+		return toUnits(union(packages, packagePostings, prefix));
+	}
+
+	private BitSet idPrefixMatches(String prefix) {
+		return union(ids, idPostings, prefix.toLowerCase(Locale.ROOT));
+	}
+
+	private static BitSet union(String[] keys, int[][] postings, String prefix) {
+		var result = new BitSet();
+		int i = Arrays.binarySearch(keys, prefix);
+		if (i < 0) {
+			i = -i - 1;
+		}
+		for (; i < keys.length && keys[i].startsWith(prefix); ++i) {
+			for (int unit : postings[i]) {
+				result.set(unit);
+			}
+		}
+		return result;
+	}
+
+	private List<P2Unit> toUnits(BitSet bits) {
+		if (bits.isEmpty()) {
+			return Collections.emptyList();
+		}
+		var result = new ArrayList<P2Unit>(bits.cardinality());
+		bits.stream().forEach(i -> result.add(units.get(i)));
+		return result;
+	}
+}
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice.p2;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Node;
+
+/**
+ * Keeps the raw xml of every {@link P2Unit} in a memory-mapped file rather than on the heap, along
+ * with a string table which deduplicates the ids and property values of every unit. A unit which
+ * lives in a store doesn't hold onto the DOM of its {@code content.xml}, which is by far the
+ * largest part of a session.
+ */
+class UnitStore implements AutoCloseable {
+	/** Source of the xml for a single unit. */
+	interface Xml {
+		Node node();
+	}
+
+	/** A unit which holds onto its DOM node, which also keeps its whole document on the heap. */
+	static Xml onHeap(Node node) {
+		return () -> node;
+	}
+
+	private static final Cleaner CLEANER = Cleaner.create();
+
+	final File file;
+	private final FileChannel channel;
+	private final Cleaner.Cleanable cleanable;
+	private volatile Map<String, String> strings = new HashMap<>();
+
+	/**
+	 * Creates a store whose temp file is deleted when it is {@link #close() closed}, or else once the
+	 * given owner is garbage collected, e.g. when a cached session is evicted.
+	 */
+	UnitStore(Object owner) throws IOException {
+		file = File.createTempFile("p2-units", ".bin");
+		file.deleteOnExit();
+		channel =
+				FileChannel.open(
+						file.toPath(),
+						StandardOpenOption.READ,
+						StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING);
+		cleanable = CLEANER.register(owner, new Release(file, channel));
+	}
+
+	/** Must not reference the store or its owner, or the owner would never be collected. */
+	private static class Release implements Runnable {
+		private final File file;
+		private final FileChannel channel;
+
+		Release(File file, FileChannel channel) {
+			this.file = file;
+			this.channel = channel;
+		}
+
+		@Override
+		public void run() {
+			try {
+				channel.close();
+				Files.deleteIfExists(file.toPath());
+			} catch (IOException e) {
+				// still mapped on Windows, deleteOnExit will get it
+			}
+		}
+	}
+
+	/** Returns the canonical copy of the given string, for strings which repeat across units. */
+	String intern(String value) {
+		var table = strings;
+		if (table == null) {
+			return value;
+		}
+		var existing = table.putIfAbsent(value, value);
+		return existing == null ? value : existing;
+	}
+
+	/**
+	 * The string table is only needed while the store is being populated, and is not safe to share
+	 * with the threads which materialize units after a freeze.
+	 */
+	void freeze() {
+		strings = null;
+	}
+
+	/**
+	 * Appends the given {@code content.xml} to the store, and returns the xml of each {@code <unit>}
+	 * within it, in document order. Returns null if the units could not be found unambiguously, in
+	 * which case the caller should keep its units on the heap.
+	 */
+	@Nullable
+	List<Xml> append(byte[] content) throws IOException {
+		var ranges = unitRanges(content);
+		if (ranges == null) {
+			return null;
+		}
+		long start = channel.size();
+		var toWrite = ByteBuffer.wrap(content);
+		long position = start;
+		while (toWrite.hasRemaining()) {
+			position += channel.write(toWrite, position);
+		}
+		MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, content.length);
+		return slices(mapped, ranges);
+	}
+
+	/** Returns the xml of each (offset, length) pair from {@link #unitRanges(byte[])}. */
+	static List<Xml> slices(ByteBuffer region, List<Integer> ranges) {
+		var slices = new ArrayList<Xml>(ranges.size() / 2);
+		for (int i = 0; i < ranges.size(); i += 2) {
+			slices.add(new Slice(region, ranges.get(i), ranges.get(i + 1)));
+		}
+		return slices;
+	}
+
+	private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER =
+			ThreadLocal.withInitial(
+					() -> {
+						try {
+							return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+						} catch (ParserConfigurationException e) {
+							throw Unchecked.wrap(e);
+						}
+					});
+
+	/** A unit whose xml is a range of bytes within a larger buffer, mapped or on the heap. */
+	private static class Slice implements Xml {
+		private final ByteBuffer region;
+		private final int offset, length;
+
+		Slice(ByteBuffer region, int offset, int length) {
+			this.region = region;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public Node node() {
+			var bytes = new byte[length];
+			region.duplicate().position(offset).get(bytes);
+			var db = DOCUMENT_BUILDER.get();
+			try {
+				return db.parse(new ByteArrayInputStream(bytes)).getDocumentElement();
+			} catch (Exception e) {
+				throw Unchecked.wrap(e);
+			} finally {
+				db.reset();
+			}
+		}
+	}
+
+	private static final byte[] UNIT_OPEN = bytes("<unit");
+	private static final byte[] UNIT_CLOSE = bytes("</unit>");
+	private static final byte[] COMMENT_OPEN = bytes("<!--");
+	private static final byte[] COMMENT_CLOSE = bytes("-->");
+
+	/**
+	 * Returns (offset, length) pairs for every {@code <unit>} element. Tags are ascii and a
+	 * multi-byte utf-8 sequence never contains {@code '<'}, so it is safe to scan the raw bytes.
+	 */
+	@Nullable
+	static List<Integer> unitRanges(byte[] content) {
+		var ranges = new ArrayList<Integer>();
+		int i = 0;
+		while ((i = indexOf(content, (byte) '<', i)) != -1) {
+			if (startsWith(content, i, COMMENT_OPEN)) {
+				i = indexOf(content, COMMENT_CLOSE, i);
+				if (i == -1) {
+					return null;
+				}
+				continue;
+			}
+			if (!startsWith(content, i, UNIT_OPEN) || !isNameEnd(content, i + UNIT_OPEN.length)) {
+				++i;
+				continue;
+			}
+			int tagEnd = indexOf(content, (byte) '>', i);
+			if (tagEnd == -1) {
+				return null;
+			}
+			int end;
+			if (content[tagEnd - 1] == '/') {
+				end = tagEnd + 1;
+			} else {
+				int close = indexOf(content, UNIT_CLOSE, tagEnd);
+				if (close == -1) {
+					return null;
+				}
+				end = close + UNIT_CLOSE.length;
+			}
+			ranges.add(i);
+			ranges.add(end - i);
+			i = end;
+		}
+		return ranges;
+	}
+
+	private static boolean isNameEnd(byte[] content, int idx) {
+		if (idx >= content.length) {
+			return false;
+		}
+		byte b = content[idx];
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '>' || b == '/';
+	}
+
+	private static boolean startsWith(byte[] content, int idx, byte[] prefix) {
+		if (idx + prefix.length > content.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; ++i) {
+			if (content[idx + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOf(byte[] content, byte b, int from) {
+		for (int i = from; i < content.length; ++i) {
+			if (content[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOf(byte[] content, byte[] target, int from) {
+		int i = from;
+		while ((i = indexOf(content, target[0], i)) != -1) {
+			if (startsWith(content, i, target)) {
+				return i;
+			}
+			++i;
+		}
+		return -1;
+	}
+
+	private static byte[] bytes(String ascii) {
+		return ascii.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Closes the channel and deletes the temp file, the units of this store can't be read anymore.
+	 */
+	@Override
+	public void close() {
+		cleanable.clean();
+	}
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.ide;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AppCdsTest {
+	@Test
+	public void initOnlyArchiveIsReplacedByFullLaunch(@TempDir File dir) throws IOException {
+		var jar = new File(dir, "a.jar");
+		Files.write(jar.toPath(), new byte[] {1});
+		var workspace = new File(dir, "workspace");
+		var classpath = List.of(jar);
+
+		var initOnly = archiveArg(AppCds.forWorkspace(workspace, classpath, true));
+		Assertions.assertThat(initOnly)
+				.startsWith("-XX:ArchiveClassesAtExit=")
+				.endsWith("-init-only.jsa");
+		var initOnlyArchive = new File(initOnly.substring(initOnly.indexOf('=') + 1));
+		Files.write(initOnlyArchive.toPath(), new byte[] {1});
+		Assertions.assertThat(archiveArg(AppCds.forWorkspace(workspace, classpath, true)))
+				.isEqualTo("-XX:SharedArchiveFile=" + initOnlyArchive.getAbsolutePath());
+
+		// a full launch doesn't reuse the init-only archive, it records its own
+		var full = archiveArg(AppCds.forWorkspace(workspace, classpath, false));
+		Assertions.assertThat(full)
+				.startsWith("-XX:ArchiveClassesAtExit=")
+				.doesNotContain("init-only");
+		var fullArchive = new File(full.substring(full.indexOf('=') + 1));
+		Files.write(fullArchive.toPath(), new byte[] {1});
+
+		// and then every launch uses the full one
+		for (boolean mode : new boolean[] {true, false}) {
+			Assertions.assertThat(archiveArg(AppCds.forWorkspace(workspace, classpath, mode)))
+					.isEqualTo("-XX:SharedArchiveFile=" + fullArchive.getAbsolutePath());
+		}
+		Assertions.assertThat(initOnlyArchive).doesNotExist();
+	}
+
+	private static String archiveArg(AppCds appCds) {
+		Assertions.assertThat(appCds.vmArgs).hasSize(1);
+		return appCds.vmArgs.get(0);
+	}
+}
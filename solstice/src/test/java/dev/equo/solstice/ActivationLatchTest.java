@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ActivationLatchTest {
+	@Test
+	public void sharedDependencyIsActivatedOnceAndAwaited() throws InterruptedException {
+		var shared = new ActivationLatch();
+		var sharedActivations = new AtomicInteger();
+		var sharedStarted = new CountDownLatch(1);
+		var releaseShared = new CountDownLatch(1);
+		var sawSharedFinished = new ArrayList<Boolean>();
+		Runnable activateDependent =
+				() -> {
+					// each dependent bundle starts the shared dependency first
+					if (shared.begin()) {
+						sharedActivations.incrementAndGet();
+						sharedStarted.countDown();
+						Unchecked.get(() -> releaseShared.await(10, TimeUnit.SECONDS));
+						shared.finish();
+					}
+					synchronized (sawSharedFinished) {
+						sawSharedFinished.add(shared.isDone());
+					}
+				};
+		var first = new Thread(activateDependent);
+		first.start();
+		Assertions.assertTrue(sharedStarted.await(10, TimeUnit.SECONDS));
+		var second = new Thread(activateDependent);
+		second.start();
+		second.join(200);
+		// the second dependent is still waiting, rather than carrying on with an inactive dependency
+		Assertions.assertTrue(second.isAlive());
+		releaseShared.countDown();
+		first.join(10_000);
+		second.join(10_000);
+		Assertions.assertEquals(1, sharedActivations.get());
+		Assertions.assertEquals(List.of(true, true), sawSharedFinished);
+	}
+
+	@Test
+	public void reentrantStartDoesNotWait() {
+		var latch = new ActivationLatch();
+		Assertions.assertTrue(latch.begin());
+		Assertions.assertFalse(latch.begin());
+		latch.finish();
+		Assertions.assertFalse(latch.begin());
+	}
+
+	@Test
+	public void threadsWaitingOnEachOtherDoNotDeadlock() throws InterruptedException {
+		var a = new ActivationLatch();
+		var b = new ActivationLatch();
+		var bothOwned = new CountDownLatch(2);
+		Thread first =
+				new Thread(
+						() -> {
+							a.begin();
+							bothOwned.countDown();
+							Unchecked.get(() -> bothOwned.await(10, TimeUnit.SECONDS));
+							b.begin();
+							a.finish();
+						});
+		Thread second =
+				new Thread(
+						() -> {
+							b.begin();
+							bothOwned.countDown();
+							Unchecked.get(() -> bothOwned.await(10, TimeUnit.SECONDS));
+							a.begin();
+							b.finish();
+						});
+		first.start();
+		second.start();
+		first.join(10_000);
+		second.join(10_000);
+		Assertions.assertFalse(first.isAlive());
+		Assertions.assertFalse(second.isAlive());
+		Assertions.assertTrue(a.isDone());
+		Assertions.assertTrue(b.isDone());
+	}
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleException;
+
+public class ActivationPlanTest {
+	@TempDir File tempDir;
+
+	/** A Solstice of a, b and c in classpath order, where a requires c. */
+	private Solstice solstice(List<String> started, Set<String> failing) throws IOException {
+		var manifests = new ArrayList<SolsticeManifest>();
+		var jars =
+				List.of(
+						JarFixture.bundleJar(tempDir, "a", "Require-Bundle", "c"),
+						JarFixture.bundleJar(tempDir, "b"),
+						JarFixture.bundleJar(tempDir, "c"));
+		for (int i = 0; i < jars.size(); ++i) {
+			manifests.add(new SolsticeManifest(JarFixture.manifestUrl(jars.get(i)), i + 1));
+		}
+		var solstice = new Solstice(manifests);
+		solstice.hydrateFrom(
+				manifest ->
+						(Bundle)
+								Proxy.newProxyInstance(
+										Bundle.class.getClassLoader(),
+										new Class<?>[] {Bundle.class},
+										(proxy, method, args) -> {
+											if (method.getName().equals("start")) {
+												if (failing.contains(manifest.getSymbolicName())) {
+													throw new BundleException("failed on purpose");
+												}
+												started.add(manifest.getSymbolicName());
+											} else if (method.getName().equals("toString")) {
+												return manifest.toString();
+											}
+											return null;
+										}));
+		return solstice;
+	}
+
+	@Test
+	public void recordAndReplay() throws IOException {
+		var planFile = new File(tempDir, ActivationPlan.FILENAME);
+		var recorded = new ArrayList<String>();
+		var recording = solstice(recorded, Set.of());
+		Assertions.assertThat(ActivationPlan.load(planFile, recording, "shim")).isNull();
+		recording.startAllWithLazy(false);
+		ActivationPlan.save(planFile, recording, "shim");
+		Assertions.assertThat(recorded).containsExactly("c", "a", "b");
+
+		var replayed = new ArrayList<String>();
+		var replaying = solstice(replayed, Set.of());
+		Assertions.assertThat(ActivationPlan.load(planFile, replaying, "atomos")).isNull();
+		ActivationPlan.load(planFile, replaying, "shim").replay(replaying);
+		Assertions.assertThat(replayed).containsExactly("c", "a", "b");
+		Assertions.assertThat(planFile).exists();
+	}
+
+	@Test
+	public void failedLaunchesAreNotRecorded() throws IOException {
+		var planFile = new File(tempDir, ActivationPlan.FILENAME);
+		var first = solstice(new ArrayList<>(), Set.of());
+		first.startAllWithLazy(false);
+		ActivationPlan.save(planFile, first, "shim");
+		Assertions.assertThat(planFile).exists();
+
+		// a replay which fails deletes the plan
+		var failingReplay = solstice(new ArrayList<>(), Set.of("b"));
+		ActivationPlan.load(planFile, failingReplay, "shim").replay(failingReplay);
+		Assertions.assertThat(failingReplay.activationFailures()).isEqualTo(1);
+		Assertions.assertThat(planFile).doesNotExist();
+
+		// and so does a dynamic start which fails
+		ActivationPlan.save(planFile, first, "shim");
+		var failingStart = solstice(new ArrayList<>(), Set.of("a"));
+		failingStart.startAllWithLazy(false);
+		ActivationPlan.save(planFile, failingStart, "shim");
+		Assertions.assertThat(planFile).doesNotExist();
+	}
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/** Builds jars and zips for tests, either in memory or as files. */
+class JarFixture {
+	private JarFixture() {}
+
+	static byte[] utf8(String content) {
+		return content.getBytes(StandardCharsets.UTF_8);
+	}
+
+	static byte[] zip(Map<String, byte[]> entries) throws IOException {
+		return zip(entries, false);
+	}
+
+	/** If {@code stored}, then every entry is stored uncompressed, as a nested jar often is. */
+	static byte[] zip(Map<String, byte[]> entries, boolean stored) throws IOException {
+		var bytes = new ByteArrayOutputStream();
+		try (var zip = new ZipOutputStream(bytes)) {
+			for (var entry : entries.entrySet()) {
+				var zipEntry = new ZipEntry(entry.getKey());
+				if (stored) {
+					var crc = new CRC32();
+					crc.update(entry.getValue());
+					zipEntry.setMethod(ZipEntry.STORED);
+					zipEntry.setSize(entry.getValue().length);
+					zipEntry.setCrc(crc.getValue());
+				}
+				zip.putNextEntry(zipEntry);
+				zip.write(entry.getValue());
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	/** A zip of the given entries, whose content is utf-8 text. */
+	static byte[] textZip(Map<String, String> entries) throws IOException {
+		var bytes = new LinkedHashMap<String, byte[]>();
+		entries.forEach((name, content) -> bytes.put(name, utf8(content)));
+		return zip(bytes);
+	}
+
+	static File write(File file, byte[] content) throws IOException {
+		Files.write(file.toPath(), content);
+		return file;
+	}
+
+	/** Writes a jar which has only a manifest, made of alternating header names and values. */
+	static File manifestJar(File file, String... headersAndValues) throws IOException {
+		var manifest = new Manifest();
+		var attributes = manifest.getMainAttributes();
+		attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		for (int i = 0; i < headersAndValues.length; i += 2) {
+			attributes.putValue(headersAndValues[i], headersAndValues[i + 1]);
+		}
+		new JarOutputStream(new FileOutputStream(file), manifest).close();
+		return file;
+	}
+
+	/**
+	 * Writes {@code <name>.jar} into the given folder, a bundle with an activator which isn't lazy,
+	 * plus the given alternating header names and values.
+	 */
+	static File bundleJar(File dir, String name, String... headersAndValues) throws IOException {
+		var headers = new String[6 + headersAndValues.length];
+		headers[0] = "Bundle-SymbolicName";
+		headers[1] = name;
+		headers[2] = "Bundle-Version";
+		headers[3] = "1.0.0";
+		headers[4] = "Bundle-Activator";
+		headers[5] = name + ".Activator";
+		System.arraycopy(headersAndValues, 0, headers, 6, headersAndValues.length);
+		return manifestJar(new File(dir, name + ".jar"), headers);
+	}
+
+	/** The url of the manifest within the given jar, as {@link SolsticeManifest} expects it. */
+	static URL manifestUrl(File jar) throws IOException {
+		return new URL("jar:" + jar.toURI() + "!/" + SolsticeManifest.MANIFEST_PATH);
+	}
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice;
+
+import java.io.File;
+import java.io.IOException;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ManifestIndexTest {
+	@TempDir File tempDir;
+
+	private File jar(String filename, String... headers) throws IOException {
+		return JarFixture.manifestJar(new File(tempDir, filename), headers);
+	}
+
+	private static void assertSameManifest(SolsticeManifest expected, SolsticeManifest actual) {
+		Assertions.assertThat(actual.getJarUrl()).isEqualTo(expected.getJarUrl());
+		Assertions.assertThat(actual.getHeadersOriginal()).isEqualTo(expected.getHeadersOriginal());
+		Assertions.assertThat(actual.getSymbolicName()).isEqualTo(expected.getSymbolicName());
+		Assertions.assertThat(actual.getVersion()).isEqualTo(expected.getVersion());
+		Assertions.assertThat(actual.requiredBundles).isEqualTo(expected.requiredBundles);
+		Assertions.assertThat(actual.pkgImports).isEqualTo(expected.pkgImports);
+		Assertions.assertThat(actual.pkgExports).isEqualTo(expected.pkgExports);
+		Assertions.assertThat(actual.capProvides).isEqualTo(expected.capProvides);
+		Assertions.assertThat(actual.capRequires).isEqualTo(expected.capRequires);
+		Assertions.assertThat(actual.lazy).isEqualTo(expected.lazy);
+	}
+
+	/** Saves the index, and returns true if that rewrote the file. */
+	private static boolean saveRewrites(ManifestIndex index, File file) {
+		if (file.exists()) {
+			Assertions.assertThat(file.setLastModified(0)).isTrue();
+		}
+		index.save();
+		return file.lastModified() != 0;
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		var longValue = "x".repeat(70_000);
+		var bundle =
+				jar(
+						"bundle.jar",
+						"Bundle-SymbolicName",
+						"a.bundle;singleton:=true",
+						"Bundle-Version",
+						"1.2.3",
+						"Export-Package",
+						"a.pkg,a.pkg.internal;x-internal:=true",
+						"Import-Package",
+						"b.pkg",
+						"Require-Bundle",
+						"b.bundle",
+						"Provide-Capability",
+						"some.ns;name=value",
+						"X-Long",
+						longValue);
+		var notABundle = jar("plain.jar", "Main-Class", "a.Main");
+		var indexFile = new File(tempDir, ManifestIndex.FILENAME);
+
+		var first = ManifestIndex.load(indexFile);
+		var bundleParsed = first.parseJar(bundle);
+		var plainParsed = first.parseJar(notABundle);
+		Assertions.assertThat(bundleParsed.getHeadersOriginal().get("X-Long")).isEqualTo(longValue);
+		Assertions.assertThat(plainParsed.getSymbolicName()).isNull();
+		Assertions.assertThat(plainParsed.capProvides).isEmpty();
+		Assertions.assertThat(saveRewrites(first, indexFile)).isTrue();
+
+		var second = ManifestIndex.load(indexFile);
+		assertSameManifest(bundleParsed, second.parseJar(bundle));
+		assertSameManifest(plainParsed, second.parseJar(notABundle));
+		// every manifest came from the index, so there is nothing to save
+		Assertions.assertThat(saveRewrites(second, indexFile)).isFalse();
+	}
+
+	@Test
+	public void keepsEntriesWhichAnotherProcessUsed() throws IOException {
+		var shared = jar("shared.jar", "Bundle-SymbolicName", "shared");
+		var buildOnly = jar("build-only.jar", "Bundle-SymbolicName", "build.only");
+		var ideOnly = jar("ide-only.jar", "Bundle-SymbolicName", "ide.only");
+		var transientJar = jar(ManifestIndex.TRANSIENT_JAR_PREFIX + "123.jar", "Class-Path", "a.jar");
+		var indexFile = new File(tempDir, ManifestIndex.FILENAME);
+
+		var build = ManifestIndex.load(indexFile);
+		build.parseJar(shared);
+		build.parseJar(buildOnly);
+		Assertions.assertThat(saveRewrites(build, indexFile)).isTrue();
+
+		var ide = ManifestIndex.load(indexFile);
+		ide.parseJar(shared);
+		ide.parseJar(ideOnly);
+		Assertions.assertThat(saveRewrites(ide, indexFile)).isTrue();
+
+		var warmIde = ManifestIndex.load(indexFile);
+		warmIde.parseJar(shared);
+		warmIde.parseJar(ideOnly);
+		warmIde.parseJar(transientJar);
+		Assertions.assertThat(saveRewrites(warmIde, indexFile)).isFalse();
+
+		var warmBuild = ManifestIndex.load(indexFile);
+		warmBuild.parseJar(shared);
+		warmBuild.parseJar(buildOnly);
+		Assertions.assertThat(saveRewrites(warmBuild, indexFile)).isFalse();
+	}
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class NestedJarsTest {
+	private static byte[] parent(String innerContent) throws IOException {
+		var manifest =
+				"Manifest-Version: 1.0\nBundle-ClassPath: .,lib/inner.jar,lib/missing.jar\n";
+		return JarFixture.zip(
+				Map.of(
+						JarFile.MANIFEST_NAME,
+						JarFixture.utf8(manifest),
+						"lib/inner.jar",
+						inner(innerContent)));
+	}
+
+	private static byte[] inner(String content) throws IOException {
+		return JarFixture.textZip(Map.of("inner.txt", content));
+	}
+
+	@Test
+	public void extractsNestedJarsAndSkipsMissingOnes(@TempDir File dir) throws IOException {
+		var parent = new File(dir, "parent.jar");
+		Files.write(parent.toPath(), parent("v1"));
+		var plain = new File(dir, "plain.jar");
+		Files.write(plain.toPath(), JarFixture.zip(Map.of("plain.txt", new byte[] {1})));
+		var folder = new File(dir, "nested");
+
+		var extracted = NestedJars.inFiles(List.of(parent, plain)).extractAllNestedJars(folder);
+		Assertions.assertThat(extracted).hasSize(1);
+		Assertions.assertThat(extracted.get(0).getKey().toExternalForm())
+				.isEqualTo("jar:" + parent.toURI() + "!/lib/inner.jar");
+		var file = extracted.get(0).getValue();
+		Assertions.assertThat(file.getParentFile()).isEqualTo(folder);
+		Assertions.assertThat(file.getName()).startsWith("parent.jar__inner.jar__").endsWith(".jar");
+		Assertions.assertThat(Files.readAllBytes(file.toPath())).isEqualTo(inner("v1"));
+		Assertions.assertThat(folder.list())
+				.containsExactlyInAnyOrder(file.getName(), NestedJars.ExtractionIndex.FILENAME);
+	}
+
+	@Test
+	public void indexRoundTrip(@TempDir File dir) throws IOException {
+		var parent = new File(dir, "parent with space.jar");
+		Files.write(parent.toPath(), parent("v1"));
+		var extractedJar = new File(dir, "extracted.jar");
+		Files.write(extractedJar.toPath(), inner("v1"));
+		var present = new URL("jar:" + parent.toURI() + "!/lib/inner.jar");
+		var missing = new URL("jar:" + parent.toURI() + "!/lib/missing.jar");
+		var extracted = new LinkedHashMap<URL, File>();
+		extracted.put(present, extractedJar);
+		extracted.put(missing, null);
+
+		var indexFile = new File(dir, NestedJars.ExtractionIndex.FILENAME);
+		var index = NestedJars.ExtractionIndex.load(indexFile);
+		Assertions.assertThat(index.nestedUrls(parent)).isNull();
+		index.put(parent, parent.length(), parent.lastModified(), extracted);
+		index.save();
+
+		var loaded = NestedJars.ExtractionIndex.load(indexFile);
+		Assertions.assertThat(loaded.nestedUrls(parent)).containsExactly(present, missing);
+		Assertions.assertThat(loaded.get(parent, List.of(present, missing))).isEqualTo(extracted);
+		Assertions.assertThat(loaded.get(parent, List.of(present))).isNull();
+
+		Assertions.assertThat(extractedJar.delete()).isTrue();
+		Assertions.assertThat(loaded.get(parent, List.of(present, missing))).isNull();
+
+		Files.write(indexFile.toPath(), "solstice nested-jars 1\nparents 1\n".getBytes());
+		Assertions.assertThat(NestedJars.ExtractionIndex.load(indexFile).nestedUrls(parent)).isNull();
+	}
+
+	@Test
+	public void unchangedParentsAreNotOpened(@TempDir File dir) throws IOException {
+		var parent = new File(dir, "parent.jar");
+		Files.write(parent.toPath(), parent("v1"));
+		var folder = new File(dir, "nested");
+		var first = NestedJars.inFiles(List.of(parent)).extractAllNestedJars(folder);
+
+		// same size and time, but no longer a zip, so opening it would fail
+		long lastModified = parent.lastModified();
+		var garbage = new byte[(int) parent.length()];
+		Arrays.fill(garbage, (byte) 'x');
+		Files.write(parent.toPath(), garbage);
+		Assertions.assertThat(parent.setLastModified(lastModified)).isTrue();
+		Assertions.assertThat(NestedJars.inFiles(List.of(parent)).extractAllNestedJars(folder))
+				.isEqualTo(first);
+
+		// a parent which changed is extracted again
+		Files.write(parent.toPath(), parent("v2"));
+		Assertions.assertThat(parent.setLastModified(lastModified + 2000)).isTrue();
+		var second = NestedJars.inFiles(List.of(parent)).extractAllNestedJars(folder);
+		Assertions.assertThat(second).hasSize(1);
+		Assertions.assertThat(second.get(0).getValue()).isNotEqualTo(first.get(0).getValue());
+		Assertions.assertThat(Files.readAllBytes(second.get(0).getValue().toPath()))
+				.isEqualTo(inner("v2"));
+	}
+}
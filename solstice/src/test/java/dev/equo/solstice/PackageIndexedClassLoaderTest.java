@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PackageIndexedClassLoaderTest {
+	private static File jar(File dir, String name, Map<String, String> entries) throws IOException {
+		return JarFixture.write(new File(dir, name), JarFixture.textZip(entries));
+	}
+
+	@Test
+	public void nestedJarsInPlace(@TempDir File dir) throws IOException {
+		var inner =
+				JarFixture.textZip(
+						Map.of(
+								"nested/pkg/a.txt",
+								"nested",
+								"nested/pkg/a+b c.txt",
+								"plus",
+								JarFile.MANIFEST_NAME,
+								"Manifest-Version: 1.0\n"));
+		for (boolean stored : new boolean[] {true, false}) {
+			var parent = new File(dir, "parent-" + stored + ".jar");
+			var manifest = "Manifest-Version: 1.0\nBundle-ClassPath: .,lib/inner.jar\n";
+			JarFixture.write(
+					parent,
+					JarFixture.zip(
+							Map.of(JarFile.MANIFEST_NAME, JarFixture.utf8(manifest), "lib/inner.jar", inner),
+							stored));
+
+			var extracted = new PackageIndexedClassLoader(List.of(parent), false);
+			Assertions.assertThat(extracted.getResource("nested/pkg/a.txt")).isNull();
+
+			var inPlace = new PackageIndexedClassLoader(List.of(parent), true);
+			Assertions.assertThat(read(inPlace, "nested/pkg/a.txt")).isEqualTo("nested");
+			Assertions.assertThat(inPlace.getResource("nested/pkg/a.txt").toString())
+					.endsWith(parent.getName() + "!/lib/inner.jar!/nested/pkg/a.txt");
+			try (var input = inPlace.getResource("nested/pkg/a+b c.txt").openStream()) {
+				Assertions.assertThat(new String(input.readAllBytes(), StandardCharsets.UTF_8))
+						.isEqualTo("plus");
+			}
+			Assertions.assertThat(Collections.list(inPlace.getResources(JarFile.MANIFEST_NAME)))
+					.hasSize(1);
+		}
+	}
+
+	@Test
+	public void splitPackagesKeepClasspathOrder(@TempDir File dir) throws IOException {
+		var first = jar(dir, "first.jar", Map.of("split/pkg/a.txt", "first", "root.txt", "first"));
+		var second =
+				jar(
+						dir,
+						"second.jar",
+						Map.of("split/pkg/a.txt", "second", "split/pkg/b.txt", "second", "root.txt", "second"));
+		var loader = new PackageIndexedClassLoader(List.of(first, second), false);
+
+		Assertions.assertThat(read(loader, "split/pkg/a.txt")).isEqualTo("first");
+		Assertions.assertThat(read(loader, "split/pkg/b.txt")).isEqualTo("second");
+		var roots = Collections.list(loader.getResources("root.txt"));
+		Assertions.assertThat(roots).hasSize(2);
+		Assertions.assertThat(roots.get(0).toString()).endsWith("/first.jar!/root.txt");
+		Assertions.assertThat(roots.get(1).toString()).endsWith("/second.jar!/root.txt");
+		Assertions.assertThat(loader.getResource("split/missing.txt")).isNull();
+		Assertions.assertThat(loader.getResource("other/pkg/a.txt")).isNull();
+	}
+
+	private static String read(ClassLoader loader, String name) throws IOException {
+		try (var input = loader.getResourceAsStream(name)) {
+			return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+}
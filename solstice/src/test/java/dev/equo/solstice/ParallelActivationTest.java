@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.framework.Bundle;
+
+public class ParallelActivationTest {
+	@TempDir File tempDir;
+
+	/** Every start and finish of an activation, as "start name" and "finish name". */
+	private final List<String> events = new CopyOnWriteArrayList<>();
+	private final Map<String, Thread> threads = new ConcurrentHashMap<>();
+
+	private URL bundle(String name, String... headersAndValues) throws IOException {
+		return JarFixture.manifestUrl(JarFixture.bundleJar(tempDir, name, headersAndValues));
+	}
+
+	/**
+	 * A Solstice of the given bundles in classpath order, whose stand-ins record their activation.
+	 * Bundles in {@code slow} take a while to activate, and those in {@code failing} throw.
+	 */
+	private Solstice solstice(List<URL> bundles, Set<String> slow, Set<String> failing) {
+		var manifests = new ArrayList<SolsticeManifest>();
+		for (int i = 0; i < bundles.size(); ++i) {
+			manifests.add(new SolsticeManifest(bundles.get(i), i + 1));
+		}
+		var solstice = new Solstice(manifests);
+		solstice.hydrateFrom(
+				manifest ->
+						(Bundle)
+								Proxy.newProxyInstance(
+										Bundle.class.getClassLoader(),
+										new Class<?>[] {Bundle.class},
+										(proxy, method, args) -> {
+											var name = manifest.getSymbolicName();
+											if (method.getName().equals("start")) {
+												threads.put(name, Thread.currentThread());
+												events.add("start " + name);
+												if (slow.contains(name)) {
+													Thread.sleep(100);
+												}
+												if (failing.contains(name)) {
+													throw new AssertionError("failed on purpose in " + name);
+												}
+												events.add("finish " + name);
+											} else if (method.getName().equals("toString")) {
+												return manifest.toString();
+											}
+											return null;
+										}));
+		return solstice;
+	}
+
+	private void assertStartsAfter(String bundle, String provider) {
+		Assertions.assertThat(events.indexOf("start " + bundle))
+				.describedAs("%s starts after %s finishes in %s", bundle, provider, events)
+				.isGreaterThan(events.indexOf("finish " + provider));
+	}
+
+	@Test
+	public void bundlesWaitForTheirProviders() throws IOException {
+		// the consumers come first on the classpath, and the providers are slow
+		var bundles =
+				List.of(
+						bundle("pkg.consumer", "Import-Package", "pkg.api"),
+						bundle("cap.consumer", "Require-Capability", "test.cap;filter:=\"(name=x)\""),
+						bundle("bundle.consumer", "Require-Bundle", "bundle.provider"),
+						bundle("main", "Require-Bundle", "bundle.consumer"),
+						bundle("pkg.provider", "Export-Package", "pkg.api"),
+						bundle("cap.provider", "Provide-Capability", "test.cap;name=x"),
+						bundle("bundle.provider"),
+						bundle("independent"));
+		var solstice =
+				solstice(bundles, Set.of("pkg.provider", "cap.provider", "bundle.provider"), Set.of());
+		solstice.startAllWithLazyInParallel(false, 4, Set.of("main"));
+
+		Assertions.assertThat(events).hasSize(2 * bundles.size());
+		assertStartsAfter("pkg.consumer", "pkg.provider");
+		assertStartsAfter("cap.consumer", "cap.provider");
+		assertStartsAfter("bundle.consumer", "bundle.provider");
+		assertStartsAfter("main", "bundle.consumer");
+		Assertions.assertThat(threads.get("main")).isSameAs(Thread.currentThread());
+		Assertions.assertThat(threads.get("pkg.provider")).isNotSameAs(Thread.currentThread());
+	}
+
+	@Test
+	public void failureOnThePoolIsRethrownAfterThePartialPlan() throws IOException {
+		var bundles =
+				List.of(
+						bundle("failing"),
+						bundle("main"),
+						bundle("after.failing", "Require-Bundle", "failing"));
+		var solstice = solstice(bundles, Set.of("failing"), Set.of("failing"));
+		Assertions.assertThatThrownBy(
+						() -> solstice.startAllWithLazyInParallel(false, 4, Set.of("main")))
+				.isInstanceOf(AssertionError.class)
+				.hasMessage("failed on purpose in failing");
+		// main was activated while failing was still running, and nothing which needs failing was
+		Assertions.assertThat(events)
+				.containsExactlyInAnyOrder("start failing", "start main", "finish main");
+	}
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SerializableMiscTest {
+	@Test
+	public void linesRoundTrip(@TempDir File dir) {
+		var values =
+				List.of(
+						"plain",
+						"",
+						"two\nlines",
+						"carriage\r\nreturn",
+						"back\\slash",
+						"literal \\n is not a newline",
+						"trailing\\",
+						"\\\\n",
+						"\n",
+						"space at end ");
+		var sections = new LinkedHashMap<String, List<String>>();
+		sections.put("values", values);
+		sections.put("empty", List.of());
+		sections.put("with space", List.of("last"));
+		var file = new File(dir, "lines");
+		SerializableMisc.linesToFile("test", sections, file);
+
+		var read = SerializableMisc.linesFromFile("test", file);
+		Assertions.assertThat(read).isEqualTo(sections);
+		Assertions.assertThat(read.keySet()).containsExactly("values", "empty", "with space");
+		Assertions.assertThatThrownBy(() -> SerializableMisc.linesFromFile("other", file))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	public void pathsRoundTrip(@TempDir File dir) {
+		var paths = List.of(new File("/a/b.jar"), new File("with space/c.jar"), new File("new\nline"));
+		var file = new File(dir, "paths");
+		SerializableMisc.pathsToFile(paths, file);
+		Assertions.assertThat(SerializableMisc.pathsFromFile(file)).isEqualTo(paths);
+	}
+
+	@Test
+	public void javaSerializedPathsStillLoad(@TempDir File dir) {
+		var paths = new ArrayList<>(List.of(new File("/a/b.jar"), new File("c.jar")));
+		var file = new File(dir, "paths");
+		SerializableMisc.toFile(paths, file);
+		Assertions.assertThat(SerializableMisc.linesFromFile("paths", file)).isNull();
+		Assertions.assertThat(SerializableMisc.pathsFromFile(file)).isEqualTo(paths);
+	}
+}
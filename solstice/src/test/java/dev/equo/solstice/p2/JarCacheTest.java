@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice.p2;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class JarCacheTest {
+	private static final String JAR = "a.b_1.0.0.jar";
+
+	private static File write(File file, String content) throws IOException {
+		Files.createDirectories(file.getParentFile().toPath());
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	@Test
+	public void localChecksumMismatchFallsThroughToTheNextRepo(@TempDir File dir)
+			throws IOException {
+		write(new File(dir, "stale/plugins/" + JAR), "stale");
+		var fresh = write(new File(dir, "fresh/plugins/" + JAR), "fresh");
+		var repos =
+				List.of(
+						new File(dir, "stale").toURI().toString(), new File(dir, "fresh").toURI().toString());
+		var cache = new JarCache(new File(dir, "pool"), P2ClientCache.OFFLINE, null);
+
+		var expected = JarCache.sha256(fresh);
+		Assertions.assertThat(cache.download(repos, JAR, expected).getCanonicalFile())
+				.isEqualTo(fresh.getCanonicalFile());
+		Assertions.assertThatThrownBy(() -> cache.download(repos, JAR, "0000"))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("Checksum mismatch")
+				.satisfies(e -> Assertions.assertThat(e.getSuppressed()).hasSize(1));
+	}
+
+	@Test
+	public void cachedJarWhichDoesNotMatchIsDownloadedAgain(@TempDir File dir) throws IOException {
+		var repo = "https://repo.invalid/p2/";
+		var pool = new File(dir, "pool");
+		var cached = write(new File(pool, OfflineCache.filenameSafe(repo) + "/" + JAR), "good");
+		var expected = JarCache.sha256(cached);
+		var cache = new JarCache(pool, P2ClientCache.OFFLINE, null);
+
+		Assertions.assertThat(cache.download(List.of(repo), JAR, expected)).isEqualTo(cached);
+		write(cached, "corrupt");
+		Assertions.assertThat(cache.download(List.of(repo), JAR, null)).isEqualTo(cached);
+		// offline, so the mismatched jar is dropped but can't be downloaded again
+		Assertions.assertThatThrownBy(() -> cache.download(List.of(repo), JAR, expected))
+				.isInstanceOf(IllegalStateException.class);
+		Assertions.assertThat(cached).doesNotExist();
+	}
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice.p2;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import javax.annotation.Nullable;
+
+/** Builds the {@code content.xml} of a local p2 repository, so that tests can run offline. */
+class LocalRepoFixture {
+	private LocalRepoFixture() {}
+
+	static String unit(String id, String version, String... children) {
+		return "<unit id='"
+				+ id
+				+ "' version='"
+				+ version
+				+ "'>"
+				+ String.join("", children)
+				+ "</unit>";
+	}
+
+	/** Alternating property names and values. */
+	static String properties(String... namesAndValues) {
+		var xml = new StringBuilder("<properties>");
+		for (int i = 0; i < namesAndValues.length; i += 2) {
+			xml.append("<property name='").append(namesAndValues[i]);
+			xml.append("' value='").append(namesAndValues[i + 1]).append("'/>");
+		}
+		return xml.append("</properties>").toString();
+	}
+
+	static String provides(String... provided) {
+		return "<provides>" + String.join("", provided) + "</provides>";
+	}
+
+	static String provided(String namespace, String name, String version) {
+		return "<provided namespace='"
+				+ namespace
+				+ "' name='"
+				+ name
+				+ "' version='"
+				+ version
+				+ "'/>";
+	}
+
+	static String requires(String... required) {
+		return "<requires>" + String.join("", required) + "</requires>";
+	}
+
+	static String required(String namespace, String name, @Nullable String range) {
+		return "<required namespace='"
+				+ namespace
+				+ "' name='"
+				+ name
+				+ (range == null ? "" : "' range='" + range)
+				+ "'/>";
+	}
+
+	/** Writes the given units as the {@code content.xml} of the given folder. */
+	static void write(File dir, String... units) throws IOException {
+		var xml =
+				"<?xml version='1.0' encoding='UTF-8'?>\n"
+						+ "<repository name='local' version='1'><units size='"
+						+ units.length
+						+ "'>"
+						+ String.join("", units)
+						+ "</units></repository>";
+		Files.createDirectories(dir.toPath());
+		Files.write(new File(dir, "content.xml").toPath(), xml.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/** Writes the given units into the given folder, and returns a session populated from it. */
+	static P2Session populate(File dir, String... units) throws Exception {
+		write(dir, units);
+		var session = new P2Session();
+		try (var client = new P2Client(P2ClientCache.OFFLINE)) {
+			session.populateFrom(client, dir.toURI().toString());
+		}
+		return session;
+	}
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice.p2;
+
+import dev.equo.solstice.HashMisc;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LocalRepoTest {
+	private static final String CONTENT =
+			"<?xml version='1.0' encoding='UTF-8'?>\n"
+					+ "<repository name='local' version='1'>"
+					+ "<units size='1'><unit id='a.b' version='1.0.0'/></units>"
+					+ "</repository>";
+
+	private static String utf8(ByteBuffer buffer) {
+		return new String(LocalRepo.toBytes(buffer), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void readsFilesAndArchives(@TempDir File dir) throws IOException {
+		var repo = new File(dir, "repo with space");
+		Files.createDirectories(repo.toPath());
+		Files.write(new File(repo, "content.xml").toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+		var archive = new File(dir, "repo.zip");
+		try (var zip = new ZipOutputStream(new FileOutputStream(archive))) {
+			zip.putNextEntry(new ZipEntry("content.xml"));
+			zip.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+		}
+		var expectedDigest = HashMisc.sha256Hex(CONTENT);
+
+		for (var url :
+				new String[] {
+					"file:" + repo.getAbsolutePath() + "/content.xml",
+					repo.toURI() + "content.xml",
+					"jar:" + archive.toURI() + "!/content.xml"
+				}) {
+			Assertions.assertThat(LocalRepo.isLocal(url)).isTrue();
+			Assertions.assertThat(utf8(LocalRepo.read(url))).isEqualTo(CONTENT);
+			Assertions.assertThat(LocalRepo.digest(url)).isEqualTo(expectedDigest);
+		}
+		for (var missing :
+				new String[] {
+					repo.toURI() + "artifacts.xml", "jar:" + archive.toURI() + "!/artifacts.xml"
+				}) {
+			Assertions.assertThat(LocalRepo.read(missing)).isNull();
+			Assertions.assertThat(LocalRepo.digest(missing)).isEqualTo("absent");
+		}
+	}
+
+	@Test
+	public void digestIsOnlyRecomputedWhenTheFileChanges(@TempDir File dir) throws IOException {
+		var file = new File(dir, "content.xml");
+		Files.write(file.toPath(), "aaaa".getBytes(StandardCharsets.UTF_8));
+		var url = file.toURI().toString();
+		Assertions.assertThat(LocalRepo.digest(url)).isEqualTo(HashMisc.sha256Hex("aaaa"));
+
+		// same size and time, so the file isn't read again
+		long lastModified = file.lastModified();
+		Files.write(file.toPath(), "bbbb".getBytes(StandardCharsets.UTF_8));
+		Assertions.assertThat(file.setLastModified(lastModified)).isTrue();
+		Assertions.assertThat(LocalRepo.digest(url)).isEqualTo(HashMisc.sha256Hex("aaaa"));
+
+		Assertions.assertThat(file.setLastModified(lastModified + 2000)).isTrue();
+		Assertions.assertThat(LocalRepo.digest(url)).isEqualTo(HashMisc.sha256Hex("bbbb"));
+
+		Assertions.assertThat(file.delete()).isTrue();
+		Assertions.assertThat(LocalRepo.digest(url)).isEqualTo("absent");
+	}
+
+	@Test
+	public void populateFromFileRepository(@TempDir File dir) throws Exception {
+		Files.write(new File(dir, "content.xml").toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+		try (var session = new P2Session();
+				var client = new P2Client(P2ClientCache.OFFLINE)) {
+			session.populateFrom(client, dir.toURI().toString());
+			Assertions.assertThat(session.getUnitById("a.b").getVersion().toString())
+					.isEqualTo("1.0.0");
+			Assertions.assertThat(client.metadataDigests())
+					.containsEntry(dir.toURI() + "content.xml", HashMisc.sha256Hex(CONTENT));
+		}
+	}
+}
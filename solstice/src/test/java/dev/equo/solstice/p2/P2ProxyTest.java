@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice.p2;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class P2ProxyTest {
+	private static final Map<String, String> UPSTREAM =
+			Map.of(
+					"/repo/content.xml", "<repository name='stand-in'/>",
+					"/repo/plugins/a.b_1.0.0.jar", "0123456789");
+
+	private final Map<String, AtomicInteger> upstreamHits = new ConcurrentHashMap<>();
+	private final OkHttpClient client = new OkHttpClient.Builder().build();
+	private HttpServer upstream;
+	private P2Proxy proxy;
+	private String repo;
+	private File p2data;
+
+	@BeforeEach
+	public void start(@TempDir File p2data) throws IOException {
+		upstream = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		upstream.createContext(
+				"/",
+				exchange -> {
+					var path = exchange.getRequestURI().getPath();
+					upstreamHits.computeIfAbsent(path, unused -> new AtomicInteger()).incrementAndGet();
+					var content = UPSTREAM.get(path);
+					if (content == null) {
+						exchange.sendResponseHeaders(404, -1);
+					} else {
+						var bytes = content.getBytes(StandardCharsets.UTF_8);
+						exchange.sendResponseHeaders(200, bytes.length);
+						exchange.getResponseBody().write(bytes);
+					}
+					exchange.close();
+				});
+		upstream.start();
+		repo = "http://localhost:" + upstream.getAddress().getPort() + "/repo/";
+		proxy =
+				P2Proxy.start(
+						new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+						p2data,
+						P2ClientCache.PREFER_OFFLINE,
+						List.of(repo));
+		this.p2data = p2data;
+	}
+
+	@AfterEach
+	public void stop() {
+		proxy.close();
+		upstream.stop(0);
+	}
+
+	/** Sends the path as-is, because okhttp would resolve its dot segments. */
+	private String rawStatusLine(String path) throws IOException {
+		var address = proxy.url().substring("http://".length(), proxy.url().length() - 1).split(":");
+		try (var socket = new Socket(address[0], Integer.parseInt(address[1]))) {
+			var request = "GET " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n";
+			socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+			var reader =
+					new BufferedReader(
+							new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+			return reader.readLine();
+		}
+	}
+
+	private Response get(String upstreamUrl, String... headers) throws IOException {
+		var request = new Request.Builder().url(P2Proxy.proxied(proxy.url(), upstreamUrl));
+		for (int i = 0; i < headers.length; i += 2) {
+			request.header(headers[i], headers[i + 1]);
+		}
+		return client.newCall(request.build()).execute();
+	}
+
+	@Test
+	public void metadataIsReadThrough() throws IOException {
+		String etag;
+		try (var response = get(repo + "content.xml")) {
+			Assertions.assertThat(response.code()).isEqualTo(200);
+			Assertions.assertThat(response.body().string()).isEqualTo("<repository name='stand-in'/>");
+			etag = response.header("ETag");
+		}
+		try (var response = get(repo + "content.xml")) {
+			Assertions.assertThat(response.body().string()).isEqualTo("<repository name='stand-in'/>");
+		}
+		try (var response = get(repo + "content.xml", "If-None-Match", etag)) {
+			Assertions.assertThat(response.code()).isEqualTo(304);
+		}
+		try (var response = get(repo + "compositeContent.xml")) {
+			Assertions.assertThat(response.code()).isEqualTo(404);
+		}
+		try (var response = get(repo + "compositeContent.xml")) {
+			Assertions.assertThat(response.code()).isEqualTo(404);
+		}
+		Assertions.assertThat(upstreamHits.get("/repo/content.xml").get()).isEqualTo(1);
+		Assertions.assertThat(upstreamHits.get("/repo/compositeContent.xml").get()).isEqualTo(1);
+	}
+
+	@Test
+	public void jarsSupportRanges() throws IOException {
+		String lastModified;
+		try (var response = get(repo + "plugins/a.b_1.0.0.jar", "Range", "bytes=2-4")) {
+			Assertions.assertThat(response.code()).isEqualTo(206);
+			Assertions.assertThat(response.header("Content-Range")).isEqualTo("bytes 2-4/10");
+			Assertions.assertThat(response.body().string()).isEqualTo("234");
+			lastModified = response.header("Last-Modified");
+		}
+		try (var response = get(repo + "plugins/a.b_1.0.0.jar", "Range", "bytes=-3")) {
+			Assertions.assertThat(response.body().string()).isEqualTo("789");
+		}
+		try (var response = get(repo + "plugins/a.b_1.0.0.jar", "Range", "bytes=10-")) {
+			Assertions.assertThat(response.code()).isEqualTo(416);
+		}
+		try (var response = get(repo + "plugins/a.b_1.0.0.jar", "If-Modified-Since", lastModified)) {
+			Assertions.assertThat(response.code()).isEqualTo(304);
+		}
+		try (var response = get(repo + "plugins/a.b_1.0.0.jar")) {
+			Assertions.assertThat(response.body().string()).isEqualTo("0123456789");
+		}
+		Assertions.assertThat(upstreamHits.get("/repo/plugins/a.b_1.0.0.jar").get()).isEqualTo(1);
+	}
+
+	@Test
+	public void pathsCantEscapeTheirRepository() throws IOException {
+		var proxied = "/http/localhost:" + upstream.getAddress().getPort() + "/repo/plugins/";
+		for (var escape :
+				List.of(
+						"../../../../evil.jar",
+						"%2e%2e/%2E%2E/evil.jar",
+						"..%2fevil.jar",
+						"..%5Cevil.jar",
+						"..\\evil.jar")) {
+			Assertions.assertThat(rawStatusLine(proxied + escape)).startsWith("HTTP/1.1 400");
+		}
+		try (var files = Files.walk(p2data.toPath())) {
+			Assertions.assertThat(files.map(Path::getFileName).map(Path::toString))
+					.doesNotContain("evil.jar");
+		}
+		Assertions.assertThat(upstreamHits).isEmpty();
+	}
+
+	@Test
+	public void onlyAllowedUpstreamsAreFetched() throws IOException {
+		var otherRepo = "http://localhost:" + upstream.getAddress().getPort() + "/other/";
+		try (var response = get(otherRepo + "content.xml")) {
+			Assertions.assertThat(response.code()).isEqualTo(403);
+		}
+		// a prefix match which isn't on a path boundary
+		try (var response = get(repo.substring(0, repo.length() - 1) + "2/content.xml")) {
+			Assertions.assertThat(response.code()).isEqualTo(403);
+		}
+		Assertions.assertThat(upstreamHits).isEmpty();
+	}
+
+	@Test
+	public void ifRangeNeedsAStrongEtag() throws IOException {
+		String etag;
+		try (var response = get(repo + "plugins/a.b_1.0.0.jar")) {
+			etag = response.header("ETag");
+		}
+		Assertions.assertThat(etag).startsWith("W/");
+		try (var response =
+				get(repo + "plugins/a.b_1.0.0.jar", "Range", "bytes=2-4", "If-Range", etag)) {
+			Assertions.assertThat(response.code()).isEqualTo(200);
+			Assertions.assertThat(response.body().string()).isEqualTo("0123456789");
+		}
+	}
+}
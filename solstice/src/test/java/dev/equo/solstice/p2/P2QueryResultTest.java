@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice.p2;
+
+import java.io.File;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class P2QueryResultTest {
+	@Test
+	public void diff() {
+		var before =
+				new P2QueryResult(
+						List.of("org.eclipse.platform:org.eclipse.core.runtime:3.26.0", "g:a:1"),
+						List.of(new File("a.jar"), new File("b.jar")));
+		var after =
+				new P2QueryResult(
+						List.of("g:a:1", "g:b:2"), List.of(new File("b.jar"), new File("c.jar")));
+
+		var diff = after.diff(before);
+		Assertions.assertThat(diff.getAddedJarsOnMavenCentral()).containsExactly("g:b:2");
+		Assertions.assertThat(diff.getRemovedJarsOnMavenCentral())
+				.containsExactly("org.eclipse.platform:org.eclipse.core.runtime:3.26.0");
+		Assertions.assertThat(diff.getAddedJarsNotOnMavenCentral()).containsExactly(new File("c.jar"));
+		Assertions.assertThat(diff.getRemovedJarsNotOnMavenCentral())
+				.containsExactly(new File("a.jar"));
+		Assertions.assertThat(diff.isEmpty()).isFalse();
+		Assertions.assertThat(after.diff(after).isEmpty()).isTrue();
+	}
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice.p2;
+
+import static dev.equo.solstice.p2.LocalRepoFixture.provided;
+import static dev.equo.solstice.p2.LocalRepoFixture.provides;
+import static dev.equo.solstice.p2.LocalRepoFixture.required;
+import static dev.equo.solstice.p2.LocalRepoFixture.requires;
+import static dev.equo.solstice.p2.LocalRepoFixture.unit;
+
+import java.io.File;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class P2QueryTest {
+	private static final String IU = "org.eclipse.equinox.p2.iu";
+	private static final String PKG = "java.package";
+
+	private static String lib(String version) {
+		return unit("lib", version, provides(provided(IU, "lib", version)));
+	}
+
+	@Test
+	public void requirementsWhichDifferOnlyByRangeAreAllResolved(@TempDir File dir)
+			throws Exception {
+		try (var session =
+				LocalRepoFixture.populate(
+						dir,
+						unit(
+								"app",
+								"1.0.0",
+								requires(
+										required(PKG, "foo", "[1.0.0,2.0.0)"), required(PKG, "foo", "[2.0.0,3.0.0)"))),
+						unit(
+								"mixed",
+								"1.0.0",
+								requires(required(IU, "lib", null), required(IU, "lib", "1.0.0"))),
+						unit("old.foo", "1.0.0", provides(provided(PKG, "foo", "1.5.0"))),
+						unit("new.foo", "1.0.0", provides(provided(PKG, "foo", "2.5.0"))),
+						lib("1.0.0"))) {
+			Assertions.assertThat(session.getUnitById("app").requires()).hasSize(2);
+			Assertions.assertThat(session.getUnitById("mixed").requires()).hasSize(2);
+
+			var query = session.query();
+			query.install("app");
+			Assertions.assertThat(query.getInstalledUnitById("old.foo")).isNotNull();
+			Assertions.assertThat(query.getInstalledUnitById("new.foo")).isNotNull();
+			Assertions.assertThat(query.getAmbiguousRequirements()).isEmpty();
+			Assertions.assertThat(query.getUnmetRequirements()).isEmpty();
+		}
+	}
+
+	@Test
+	public void greatestVersionInRangeIsInstalled(@TempDir File dir) throws Exception {
+		try (var session =
+				LocalRepoFixture.populate(
+						dir,
+						unit("app", "1.0.0", requires(required(IU, "lib", "[1.0.0,2.0.0)"))),
+						unit("unsatisfiable", "1.0.0", requires(required(IU, "lib", "[5.0.0,6.0.0)"))),
+						lib("0.9.0"),
+						lib("1.0.0"),
+						lib("1.5.0"),
+						lib("2.0.0"))) {
+			var query = session.query();
+			query.install("app");
+			Assertions.assertThat(query.getInstalledUnitById("lib").getVersion().toString())
+					.isEqualTo("1.5.0");
+			// every provider in range is the same unit, so nothing is ambiguous
+			Assertions.assertThat(query.getAmbiguousRequirements()).isEmpty();
+
+			var unsatisfiable = session.query();
+			unsatisfiable.install("unsatisfiable");
+			Assertions.assertThat(unsatisfiable.getInstalledUnitById("lib")).isNotNull();
+			Assertions.assertThat(unsatisfiable.getAmbiguousRequirements())
+					.extracting(Object::toString)
+					.containsExactly("iu lib [5.0.0,6.0.0)");
+		}
+	}
+}
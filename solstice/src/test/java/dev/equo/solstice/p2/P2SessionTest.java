@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice.p2;
+
+import static dev.equo.solstice.p2.LocalRepoFixture.provided;
+import static dev.equo.solstice.p2.LocalRepoFixture.provides;
+import static dev.equo.solstice.p2.LocalRepoFixture.required;
+import static dev.equo.solstice.p2.LocalRepoFixture.requires;
+import static dev.equo.solstice.p2.LocalRepoFixture.unit;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class P2SessionTest {
+	private static final String IU = "org.eclipse.equinox.p2.iu";
+	private static final String PKG = "java.package";
+
+	/** Eight apps which share a diamond of libraries through both units and packages. */
+	private static String[] units() {
+		var units = new ArrayList<String>();
+		for (int i = 0; i < 8; ++i) {
+			units.add(
+					unit(
+							"app" + i,
+							"1.0.0",
+							requires(required(IU, "left", "[1.0.0,2.0.0)"), required(PKG, "right.api", null))));
+		}
+		units.add(
+				unit(
+						"left",
+						"1.0.0",
+						provides(provided(IU, "left", "1.0.0")),
+						requires(required(IU, "base", null))));
+		units.add(
+				unit(
+						"right",
+						"1.0.0",
+						provides(provided(PKG, "right.api", "1.0.0")),
+						requires(required(IU, "base", null))));
+		units.add(unit("base", "1.0.0", provides(provided(IU, "base", "1.0.0"))));
+		return units.toArray(new String[0]);
+	}
+
+	private static P2Session populate(File dir, boolean lazy) throws Exception {
+		var session = new P2Session();
+		if (lazy) {
+			session.materializeLazily();
+		}
+		try (var client = new P2Client(P2ClientCache.OFFLINE)) {
+			session.populateFrom(client, dir.toURI().toString());
+		}
+		return session;
+	}
+
+	/** Returns the ids of every unit which installing the given app brings in. */
+	private static String install(P2Session session, int app) {
+		var query = session.query();
+		query.install("app" + app);
+		var installed = new StringBuilder();
+		for (var id : List.of("app" + app, "left", "right", "base")) {
+			if (query.isInstalled(session.getUnitById(id))) {
+				installed.append(id).append(' ');
+			}
+		}
+		return installed.toString();
+	}
+
+	@Test
+	public void frozenSessionCanBeQueriedFromManyThreads(@TempDir File dir) throws Exception {
+		LocalRepoFixture.write(dir, units());
+		var expected = new ArrayList<String>();
+		try (var unfrozen = populate(dir, false)) {
+			for (int i = 0; i < 8; ++i) {
+				expected.add(install(unfrozen, i));
+			}
+		}
+		Assertions.assertThat(expected.get(0)).contains("base", "left", "right");
+
+		var pool = Executors.newFixedThreadPool(8);
+		try {
+			for (boolean lazy : new boolean[] {false, true}) {
+				try (var session = populate(dir, lazy).freeze()) {
+					var tasks = new ArrayList<Callable<String>>();
+					for (int round = 0; round < 8; ++round) {
+						for (int i = 0; i < 8; ++i) {
+							int app = i;
+							tasks.add(() -> install(session, app));
+						}
+					}
+					var futures = pool.invokeAll(tasks);
+					for (int i = 0; i < futures.size(); ++i) {
+						Assertions.assertThat(futures.get(i).get()).isEqualTo(expected.get(i % 8));
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void frozenSessionCannotBeModified(@TempDir File dir) throws Exception {
+		LocalRepoFixture.write(dir, units());
+		try (var session = populate(dir, false)) {
+			Assertions.assertThat(session.isFrozen()).isFalse();
+			Assertions.assertThat(session.freeze()).isSameAs(session);
+			Assertions.assertThat(session.isFrozen()).isTrue();
+			Assertions.assertThat(session.freeze()).isSameAs(session);
+
+			try (var client = new P2Client(P2ClientCache.OFFLINE)) {
+				Assertions.assertThatThrownBy(() -> session.populateFrom(client, dir.toURI().toString()))
+						.isInstanceOf(IllegalStateException.class);
+			}
+			Assertions.assertThatThrownBy(session::materializeLazily)
+					.isInstanceOf(IllegalStateException.class);
+			Assertions.assertThat(session.getUnitById("app0")).isNotNull();
+			Assertions.assertThat(install(session, 0)).contains("base", "left", "right");
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice.p2;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class QueryLockFileTest {
+	@Test
+	public void roundTripThroughRepositoryWithSpace(@TempDir File dir) throws Exception {
+		var repo = new File(dir, "local repo");
+		Files.createDirectories(new File(repo, "plugins").toPath());
+		Files.write(
+				new File(repo, "content.xml").toPath(),
+				("<?xml version='1.0' encoding='UTF-8'?>\n"
+								+ "<repository name='local' version='1'>"
+								+ "<units size='1'><unit id='a.b' version='1.0.0'/></units>"
+								+ "</repository>")
+						.getBytes(StandardCharsets.UTF_8));
+		var jar = new File(repo, "plugins/a.b_1.0.0.jar");
+		Files.write(jar.toPath(), new byte[] {1, 2, 3});
+		// unencoded, as p2 repositories often are
+		var repoUrl = "file:" + repo.getAbsolutePath() + "/";
+
+		var model = new P2Model();
+		model.addP2Repo(repoUrl);
+		model.getInstall().add("a.b");
+		var lock = new QueryLockFile(new File(dir, "equo.lock"), model);
+		Assertions.assertThat(lock.read(P2ClientCache.OFFLINE)).isNull();
+
+		try (var session = new P2Session();
+				var client = new P2Client(P2ClientCache.OFFLINE)) {
+			session.populateFrom(client, repoUrl);
+			var unit = session.getUnitById("a.b");
+			Assertions.assertThat(unit.getRepoUrls()).containsExactly(repoUrl);
+			lock.write(new P2QueryResult(List.of("g:a:1.0"), List.of(jar)), List.of(unit));
+		}
+
+		var locked = lock.read(P2ClientCache.OFFLINE);
+		Assertions.assertThat(locked.getJarsOnMavenCentral()).containsExactly("g:a:1.0");
+		Assertions.assertThat(locked.getJarsNotOnMavenCentral()).containsExactly(jar);
+
+		var otherModel = model.deepCopy();
+		otherModel.getInstall().add("c.d");
+		Assertions.assertThatThrownBy(
+						() -> new QueryLockFile(lock.file, otherModel).read(P2ClientCache.OFFLINE))
+				.isInstanceOf(IllegalStateException.class);
+	}
+}
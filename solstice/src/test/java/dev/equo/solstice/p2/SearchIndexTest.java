@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice.p2;
+
+import java.io.File;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SearchIndexTest {
+	private static String unit(String id, String version, String properties, String... packages) {
+		var xml = new StringBuilder();
+		xml.append("<unit id='").append(id).append("' version='").append(version).append("'>");
+		xml.append("<properties>").append(properties).append("</properties>");
+		xml.append("<provides>");
+		for (var pkg : packages) {
+			xml.append("<provided namespace='java.package' name='").append(pkg);
+			xml.append("' version='1.0.0'/>");
+		}
+		xml.append("</provides></unit>");
+		return xml.toString();
+	}
+
+	private static String name(String name) {
+		return "<property name='org.eclipse.equinox.p2.name' value='" + name + "'/>";
+	}
+
+	private static String description(String description) {
+		return "<property name='org.eclipse.equinox.p2.description' value='" + description + "'/>";
+	}
+
+	private P2Session session;
+	private SearchIndex index;
+
+	@BeforeEach
+	public void populate(@TempDir File dir) throws Exception {
+		var units =
+				List.of(
+						unit(
+								"org.eclipse.jdt.core",
+								"3.0.0",
+								name("Java Development Tools Core"),
+								"org.eclipse.jdt.core",
+								"org.eclipse.jdt.core.dom"),
+						unit(
+								"org.eclipse.jdt.ui",
+								"3.0.0",
+								name("Java Development Tools UI") + description("The user interface")),
+						unit("org.eclipse.jdt.ui", "2.0.0", name("Old UI")),
+						unit("org.eclipse.jface", "1.0.0", name("JFace"), "org.eclipse.jface.viewers"),
+						unit(
+								"com.example",
+								"1.0.0",
+								name("%pluginName")
+										+ "<property name='df_LT.pluginName' value='Example Tool'/>"),
+						unit("org.apache.Felix", "1.0.0", name("Apache OSGi")));
+		session = LocalRepoFixture.populate(dir, units.toArray(new String[0]));
+		index = session.searchIndex();
+	}
+
+	@AfterEach
+	public void close() {
+		session.close();
+	}
+
+	private static List<String> ids(List<P2Unit> units) {
+		return units.stream().map(unit -> unit.id + ":" + unit.version).collect(Collectors.toList());
+	}
+
+	@Test
+	public void idPrefixIsARange() {
+		Assertions.assertThat(ids(index.byIdPrefix("org.eclipse.jdt")))
+				.containsExactly(
+						"org.eclipse.jdt.core:3.0.0", "org.eclipse.jdt.ui:3.0.0", "org.eclipse.jdt.ui:2.0.0");
+		Assertions.assertThat(ids(index.byIdPrefix("org.eclipse.jdt.ui")))
+				.containsExactly("org.eclipse.jdt.ui:3.0.0", "org.eclipse.jdt.ui:2.0.0");
+		Assertions.assertThat(ids(index.byIdPrefix("com."))).containsExactly("com.example:1.0.0");
+		Assertions.assertThat(index.byIdPrefix("a")).isEmpty();
+		Assertions.assertThat(index.byIdPrefix("zzz")).isEmpty();
+		Assertions.assertThat(index.byIdPrefix("org.eclipse.jdt.uix")).isEmpty();
+	}
+
+	@Test
+	public void idPrefixIgnoresCaseLikeWords() {
+		Assertions.assertThat(ids(index.byIdPrefix("ORG.Eclipse.JDT.ui")))
+				.containsExactly("org.eclipse.jdt.ui:3.0.0", "org.eclipse.jdt.ui:2.0.0");
+		Assertions.assertThat(ids(index.byIdPrefix("org.apache.f")))
+				.containsExactly("org.apache.Felix:1.0.0");
+		Assertions.assertThat(ids(index.search("org.apache.felix")))
+				.containsExactly("org.apache.Felix:1.0.0");
+		Assertions.assertThat(ids(index.search("Org.Apache.Felix")))
+				.containsExactly("org.apache.Felix:1.0.0");
+		Assertions.assertThat(ids(index.search("OSGI"))).containsExactly("org.apache.Felix:1.0.0");
+	}
+
+	@Test
+	public void everyWordMustMatch() {
+		Assertions.assertThat(ids(index.search("java")))
+				.containsExactly("org.eclipse.jdt.core:3.0.0", "org.eclipse.jdt.ui:3.0.0");
+		Assertions.assertThat(ids(index.search("Java UI")))
+				.containsExactly("org.eclipse.jdt.ui:3.0.0");
+		Assertions.assertThat(ids(index.search("dev tool, interf")))
+				.containsExactly("org.eclipse.jdt.ui:3.0.0");
+		Assertions.assertThat(ids(index.search("ui")))
+				.containsExactly("org.eclipse.jdt.ui:3.0.0", "org.eclipse.jdt.ui:2.0.0");
+		Assertions.assertThat(ids(index.search("tool")))
+				.containsExactly(
+						"com.example:1.0.0", "org.eclipse.jdt.core:3.0.0", "org.eclipse.jdt.ui:3.0.0");
+		Assertions.assertThat(index.search("java jface")).isEmpty();
+	}
+
+	@Test
+	public void idPrefixOrWords() {
+		Assertions.assertThat(ids(index.search("org.eclipse.jf")))
+				.containsExactly("org.eclipse.jface:1.0.0");
+		Assertions.assertThat(ids(index.search("jface")))
+				.containsExactly("org.eclipse.jface:1.0.0");
+	}
+
+	@Test
+	public void packagePrefix() {
+		Assertions.assertThat(ids(index.search("pkg:org.eclipse.jdt.core.dom")))
+				.containsExactly("org.eclipse.jdt.core:3.0.0");
+		Assertions.assertThat(ids(index.search("pkg:org.eclipse")))
+				.containsExactly("org.eclipse.jdt.core:3.0.0", "org.eclipse.jface:1.0.0");
+		Assertions.assertThat(index.search("pkg:java.")).isEmpty();
+		Assertions.assertThat(index.search("pkg:org.eclipse.jdt.ui")).isEmpty();
+	}
+
+	@Test
+	public void emptyQueryMatchesEverything() {
+		Assertions.assertThat(index.search("")).hasSize(6);
+		Assertions.assertThat(index.byIdPrefix("")).hasSize(6);
+		Assertions.assertThat(index.byPackagePrefix("")).hasSize(2);
+		Assertions.assertThat(ids(index.search("pkg:")))
+				.containsExactly("org.eclipse.jdt.core:3.0.0", "org.eclipse.jface:1.0.0");
+	}
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2023 EquoTech, Inc. and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     EquoTech, Inc. - initial API and implementation
+ *******************************************************************************/
+package dev.equo.solstice.p2;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class UnitStoreTest {
+	private static List<String> units(String xml) {
+		var bytes = xml.getBytes(StandardCharsets.UTF_8);
+		var ranges = UnitStore.unitRanges(bytes);
+		if (ranges == null) {
+			return null;
+		}
+		var units = new ArrayList<String>();
+		for (int i = 0; i < ranges.size(); i += 2) {
+			units.add(new String(bytes, ranges.get(i), ranges.get(i + 1), StandardCharsets.UTF_8));
+		}
+		return units;
+	}
+
+	@Test
+	public void findsEveryUnit() {
+		var xml =
+				"<repository><units size='3'>"
+						+ "<unit id='a'><provides/></unit>\n"
+						+ "<unit\tid='b'/>"
+						+ "<unit id='ü'><property name='n' value='日本'/></unit>"
+						+ "</units></repository>";
+		Assertions.assertThat(units(xml))
+				.containsExactly(
+						"<unit id='a'><provides/></unit>",
+						"<unit\tid='b'/>",
+						"<unit id='ü'><property name='n' value='日本'/></unit>");
+	}
+
+	@Test
+	public void skipsCommentsAndSimilarTags() {
+		var xml =
+				"<units><!-- <unit id='commented'/> --><unitx/><unit id='a'></unit><unit_b/></units>";
+		Assertions.assertThat(units(xml)).containsExactly("<unit id='a'></unit>");
+		Assertions.assertThat(units("<repository/>")).isEmpty();
+	}
+
+	@Test
+	public void ambiguousContentIsNull() {
+		Assertions.assertThat(units("<units><unit id='a'>")).isNull();
+		Assertions.assertThat(units("<units><unit id='a'")).isNull();
+		Assertions.assertThat(units("<units><!-- <unit id='a'/>")).isNull();
+	}
+
+	@Test
+	public void closeDeletesTheFile() throws IOException {
+		var owner = new Object();
+		var store = new UnitStore(owner);
+		var slices = store.append("<units><unit id='a'/></units>".getBytes(StandardCharsets.UTF_8));
+		Assertions.assertThat(slices).hasSize(1);
+		Assertions.assertThat(slices.get(0).node().getAttributes().getNamedItem("id").getNodeValue())
+				.isEqualTo("a");
+		Assertions.assertThat(store.file).exists();
+		store.close();
+		Assertions.assertThat(store.file).doesNotExist();
+		store.close();
+	}
+}